@@ -1,6 +1,6 @@
 // src/components/App.js
 
-import React, { useState, useEffect } from 'react';
+import React, { useState, useEffect, useRef } from 'react';
 import SearchForm from './components/SearchForm';
 import Tree from './components/Tree';
 import Modal from './components/Modal';
@@ -8,6 +8,77 @@ import Auth from './components/Auth';
 import './App.css'; // Importar el CSS
 
 
+// Recorre los nodos del árbol (cada uno una sola vez) y llama a visit con cada uno
+const forEachNode = (node, visit, seen = new Set()) => {
+  if (!node || typeof node !== 'object' || seen.has(node.id)) return;
+  seen.add(node.id);
+  visit(node);
+  ['padres', 'hijos', 'conyuges'].forEach((relacion) => {
+    (node[relacion] || []).forEach((relative) => forEachNode(relative, visit, seen));
+  });
+};
+
+const addRelative = (node, relacion, relative) => {
+  node[relacion] = node[relacion] || [];
+  if (!node[relacion].some((r) => r === relative.id || r.id === relative.id)) {
+    node[relacion].push({ ...relative, padres: [], hijos: [], conyuges: [] });
+  }
+};
+
+const removeRelative = (node, relacion, id) => {
+  node[relacion] = (node[relacion] || []).filter((r) => r !== id && r.id !== id);
+};
+
+// Datos de un nodo para colgarlo como pariente: el anunciado con NODO_AGREGADO o el que ya está en el árbol
+const findNode = (tree, id, nuevosNodos) => {
+  if (nuevosNodos[id]) return nuevosNodos[id];
+  let found = null;
+  forEachNode(tree, (node) => {
+    if (node.id === id) found = node;
+  });
+  return found;
+};
+
+// Aplica sobre el árbol local un evento de cambio recibido por SSE
+const applyTreeChange = (tree, evento, nuevosNodos) => {
+  const desde = evento.tipo === 'ARISTA_AGREGADA' ? findNode(tree, evento.desdeId, nuevosNodos) : null;
+  const hasta = evento.tipo === 'ARISTA_AGREGADA' ? findNode(tree, evento.hastaId, nuevosNodos) : null;
+
+  forEachNode(tree, (node) => {
+    switch (evento.tipo) {
+      case 'CONFIRMACION_CAMBIADA':
+        if (node.id === evento.id) node.confirmationStatus = evento.confirmationStatus;
+        break;
+      case 'NODO_ACTUALIZADO':
+        if (node.id === evento.id) Object.assign(node, evento.nodo);
+        break;
+      case 'NODO_ELIMINADO':
+        ['padres', 'hijos', 'conyuges'].forEach((relacion) => removeRelative(node, relacion, evento.id));
+        break;
+      case 'ARISTA_AGREGADA':
+        if (evento.relacion === 'PADRE') {
+          if (node.id === evento.hastaId && desde) addRelative(node, 'hijos', desde);
+          if (node.id === evento.desdeId && hasta) addRelative(node, 'padres', hasta);
+        } else if (evento.relacion === 'CONYUGE') {
+          if (node.id === evento.desdeId && hasta) addRelative(node, 'conyuges', hasta);
+          if (node.id === evento.hastaId && desde) addRelative(node, 'conyuges', desde);
+        }
+        break;
+      case 'ARISTA_QUITADA':
+        if (evento.relacion === 'PADRE') {
+          if (node.id === evento.hastaId) removeRelative(node, 'hijos', evento.desdeId);
+          if (node.id === evento.desdeId) removeRelative(node, 'padres', evento.hastaId);
+        } else if (evento.relacion === 'CONYUGE') {
+          if (node.id === evento.desdeId) removeRelative(node, 'conyuges', evento.hastaId);
+          if (node.id === evento.hastaId) removeRelative(node, 'conyuges', evento.desdeId);
+        }
+        break;
+      default:
+        break;
+    }
+  });
+};
+
 const App = () => {
   const [currentTreeId, setCurrentTreeId] = useState(null); // Inicializar sin valor
   const [treeData, setTreeData] = useState(null);
@@ -95,6 +166,52 @@ const App = () => {
     }
   };
 
+  // refreshTree cambia con el árbol mostrado; la suscripción usa siempre la versión actual
+  const refreshTreeRef = useRef(refreshTree);
+  useEffect(() => {
+    refreshTreeRef.current = refreshTree;
+  });
+
+  // Persona raíz del árbol que se está mostrando; la suscripción sigue a su familia
+  const viewedRootId = treeData ? treeData.id : null;
+
+  // Suscripción a los cambios de la familia (SSE) para actualizar el árbol sin volver a descargarlo
+  useEffect(() => {
+    if (!loggedInUser || viewedRootId === null) return undefined;
+
+    const source = new EventSource(`http://localhost:8080/api/users/${viewedRootId}/family-events`);
+    const nuevosNodos = {}; // Nodos anunciados con NODO_AGREGADO, a la espera de su arista
+
+    // Los cambios hechos entre la descarga del árbol y la apertura de la conexión no llegan por SSE,
+    // y EventSource reconecta solo pero pierde lo enviado mientras estaba caído: cada vez que la
+    // conexión queda abierta (la primera y tras reconectar) se vuelve a descargar el árbol
+    source.addEventListener('open', () => {
+      refreshTreeRef.current();
+    });
+
+    source.addEventListener('change', (e) => {
+      const evento = JSON.parse(e.data);
+
+      if (evento.tipo === 'NODO_AGREGADO') {
+        nuevosNodos[evento.id] = evento.nodo;
+        return;
+      }
+      if (evento.tipo === 'RESINCRONIZAR') {
+        refreshTreeRef.current();
+        return;
+      }
+
+      setTreeData((prev) => {
+        if (!prev) return prev;
+        const tree = JSON.parse(JSON.stringify(prev));
+        applyTreeChange(tree, evento, nuevosNodos);
+        return tree;
+      });
+    });
+
+    return () => source.close();
+  }, [loggedInUser, viewedRootId]);
+
   // Función para manejar el login exitoso
   const handleLogin = (user) => {
     setLoggedInUser(user);
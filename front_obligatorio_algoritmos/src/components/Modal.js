@@ -50,12 +50,12 @@ const Modal = ({ userId, type, onClose, refreshTree }) => {
       const result = await response.json();
       console.log('Familiar/Cónyuge agregado:', result);
 
-      // Cerrar el modal y actualizar el árbol
+      // Cerrar el modal; el árbol se actualiza con los eventos de la familia (SSE)
       onClose();
-      refreshTree();
     } catch (error) {
       console.error('Error al agregar el familiar/cónyuge:', error);
       alert('Hubo un error al agregar el familiar/cónyuge. Por favor, intenta nuevamente.');
+      refreshTree();
     }
   };
 
@@ -23,12 +23,11 @@ const TreeNode = ({ node, openModal, refreshTree, confirmerId }) => {
       if (!response.ok) {
         throw new Error(`Error: ${response.status} ${response.statusText}`);
       }
-
-      // Actualizar el árbol después de eliminar
-      refreshTree();
+      // El árbol se actualiza con los eventos de la familia (SSE)
     } catch (error) {
       console.error('Error al eliminar el usuario:', error);
       alert('Hubo un error al eliminar el usuario. Por favor, intenta nuevamente.');
+      refreshTree();
     }
   };
 
@@ -56,9 +55,7 @@ const TreeNode = ({ node, openModal, refreshTree, confirmerId }) => {
         } else {
           console.log('Usuario confirmado');
         }
-
-        // Actualizar el árbol después de confirmar
-        refreshTree();
+        // El árbol se actualiza con los eventos de la familia (SSE)
       } else {
         // Intentar obtener el mensaje de error del backend
         let errorMessage = `Error en la solicitud: ${response.status} ${response.statusText}`;
@@ -75,6 +72,7 @@ const TreeNode = ({ node, openModal, refreshTree, confirmerId }) => {
     } catch (error) {
       console.error('Error al confirmar el usuario:', error);
       alert('Hubo un error al confirmar el usuario. Por favor, intenta nuevamente.');
+      refreshTree();
     }
   };
 
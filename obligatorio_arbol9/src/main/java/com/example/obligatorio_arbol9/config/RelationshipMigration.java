@@ -0,0 +1,72 @@
+package com.example.obligatorio_arbol9.config;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// Copia las tablas de relaciones anteriores (user_parents, user_conyuges, user_confirmations) a la tabla
+// única relationship. Después las renombra con el sufijo _migrada, así quedan como respaldo y no se vuelven
+// a copiar; sólo se borran si relationship.migration.drop-legacy=true. Es idempotente: si se corta a la
+// mitad, al reiniciar vuelve a copiar (INSERT IGNORE) y termina; una vez migrado no hace nada.
+// Después de Hibernate, para que la tabla relationship ya exista
+@Component
+@DependsOn("entityManagerFactory")
+public class RelationshipMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(RelationshipMigration.class);
+
+    private static final String SUFIJO_MIGRADA = "_migrada";
+
+    @Value("${relationship.migration.drop-legacy:false}")
+    private boolean borrarTablasAnteriores;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void migrar() {
+        migrarTabla("user_parents",
+                "SELECT user_id, parent_id, 'PADRE' FROM user_parents");
+        // Las parejas estaban guardadas en los dos sentidos: queda una fila por pareja
+        migrarTabla("user_conyuges",
+                "SELECT LEAST(user_id, conyuge_id), GREATEST(user_id, conyuge_id), 'CONYUGE' FROM user_conyuges");
+        migrarTabla("user_confirmations",
+                "SELECT user_id, confirmed_by_id, 'CONFIRMACION' FROM user_confirmations");
+    }
+
+    private void migrarTabla(String tabla, String select) {
+        if (!existeTabla(tabla)) {
+            return;
+        }
+        int filas = jdbcTemplate.update("INSERT IGNORE INTO relationship (from_id, to_id, type) " + select);
+        if (borrarTablasAnteriores) {
+            jdbcTemplate.execute("DROP TABLE " + tabla);
+            log.info("Migradas {} filas de {} a relationship; tabla eliminada", filas, tabla);
+        } else {
+            jdbcTemplate.execute("ALTER TABLE " + tabla + " RENAME TO " + tabla + SUFIJO_MIGRADA);
+            log.info("Migradas {} filas de {} a relationship; tabla renombrada a {}", filas, tabla, tabla + SUFIJO_MIGRADA);
+        }
+    }
+
+    private boolean existeTabla(String tabla) {
+        try (Connection connection = dataSource.getConnection();
+             ResultSet tablas = connection.getMetaData().getTables(connection.getCatalog(), null, tabla, new String[]{"TABLE"})) {
+            return tablas.next();
+        } catch (SQLException e) {
+            throw new IllegalStateException("No se pudo consultar el esquema", e);
+        }
+    }
+}
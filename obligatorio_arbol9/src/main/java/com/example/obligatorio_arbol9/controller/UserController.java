@@ -2,11 +2,23 @@ package com.example.obligatorio_arbol9.controller;
 
 import com.example.obligatorio_arbol9.dto.*;
 import com.example.obligatorio_arbol9.entity.User;
+import com.example.obligatorio_arbol9.service.DuplicateDetectionService;
+import com.example.obligatorio_arbol9.service.ExpandService;
+import com.example.obligatorio_arbol9.service.FamilyStatsService;
+import com.example.obligatorio_arbol9.service.GraphIntegrityService;
+import com.example.obligatorio_arbol9.service.NeighbourhoodService;
+import com.example.obligatorio_arbol9.service.ReadModelService;
+import com.example.obligatorio_arbol9.service.RequestCoalescer;
+import com.example.obligatorio_arbol9.service.TreeEventService;
+import com.example.obligatorio_arbol9.service.TreeLayoutService;
+import com.example.obligatorio_arbol9.service.UserMergeService;
 import com.example.obligatorio_arbol9.service.UserService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 
@@ -17,6 +29,36 @@ public class UserController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private FamilyStatsService familyStatsService;
+
+    @Autowired
+    private ReadModelService readModelService;
+
+    @Autowired
+    private TreeEventService treeEventService;
+
+    @Autowired
+    private ExpandService expandService;
+
+    @Autowired
+    private NeighbourhoodService neighbourhoodService;
+
+    @Autowired
+    private DuplicateDetectionService duplicateDetectionService;
+
+    @Autowired
+    private UserMergeService userMergeService;
+
+    @Autowired
+    private GraphIntegrityService graphIntegrityService;
+
+    @Autowired
+    private RequestCoalescer requestCoalescer;
+
+    @Autowired
+    private TreeLayoutService treeLayoutService;
+
     // 1. Alta de usuario
     @PostMapping("/register")
     public ResponseEntity<User> registerUser(@Valid @RequestBody UserDTO userDTO) {
@@ -33,28 +75,28 @@ public class UserController {
 
     // 3. Registro de familiares
     @PostMapping("/{userId}/family")
-    public ResponseEntity<User> addFamilyMember(
+    public ResponseEntity<UserTreeDTO> addFamilyMember(
             @PathVariable Long userId,
             @Valid @RequestBody FamilyMemberRequest request) {
         userService.addFamilyMember(userId, request.getFamilyMember(), request.getRelationship());
-        User tree = userService.getGenealogyTree(userId);
+        UserTreeDTO tree = userService.getGenealogyTree(userId);
         return ResponseEntity.ok(tree);
     }
 
     // 4. Añadir cónyuge
     @PostMapping("/{userId}/spouse")
-    public ResponseEntity<User> addSpouse(
+    public ResponseEntity<UserTreeDTO> addSpouse(
             @PathVariable Long userId,
             @Valid @RequestBody UserDTO spouseDTO) {
         userService.addSpouse(userId, spouseDTO);
-        User tree = userService.getGenealogyTree(userId);
+        UserTreeDTO tree = userService.getGenealogyTree(userId);
         return ResponseEntity.ok(tree);
     }
 
     // 5. Obtener árbol genealógico
     @GetMapping("/{userId}/tree")
-    public ResponseEntity<User> getGenealogyTree(@PathVariable Long userId) {
-        User tree = userService.getGenealogyTree(userId);
+    public ResponseEntity<UserTreeDTO> getGenealogyTree(@PathVariable Long userId) {
+        UserTreeDTO tree = userService.getGenealogyTree(userId);
         return ResponseEntity.ok(tree);
     }
 
@@ -77,14 +119,14 @@ public class UserController {
     //8. Endpoint para obtener todos los usuarios sin relaciones
     @GetMapping
     public ResponseEntity<List<UserSummaryDTO>> getAllUsers() {
-        List<UserSummaryDTO> users = userService.getAllUsersSummary();
+        List<UserSummaryDTO> users = readModelService.getAllUsersSummary();
         return ResponseEntity.ok(users);
     }
 
     //Obtener árbol genealógico por nombre de usuario
     @GetMapping("/name/{nombre}/tree")
-    public ResponseEntity<User> getGenealogyTreeByName(@PathVariable String nombre) {
-        User tree = userService.getGenealogyTreeByName(nombre);
+    public ResponseEntity<UserTreeDTO> getGenealogyTreeByName(@PathVariable String nombre) {
+        UserTreeDTO tree = userService.getGenealogyTreeByName(nombre);
         return ResponseEntity.ok(tree);
     }
 
@@ -99,14 +141,34 @@ public class UserController {
     public ResponseEntity<UserTreeDTO> getGenealogyTree(
             @PathVariable Long userId,
             @RequestParam(defaultValue = "1") int depth) {
-        UserTreeDTO tree = userService.getGenealogyTree(userId, depth);
+        // Hasta profundidad 2 se lee la fila precalculada; más allá, o si aún no se proyectó, se construye.
+        // Pedidos iguales simultáneos comparten un único cálculo
+        UserTreeDTO tree = requestCoalescer.ejecutar("tree-generation:" + userId + ":" + depth,
+                () -> readModelService.getGenealogyTree(userId, depth)
+                        .orElseGet(() -> userService.getGenealogyTree(userId, depth)));
         return ResponseEntity.ok(tree);
     }
 
+    //Diagrama del árbol con coordenadas; con minX/minY/maxX/maxY devuelve sólo lo visible en esa ventana
+    @GetMapping("/{userId}/layout")
+    public ResponseEntity<TreeLayoutDTO> getTreeLayout(
+            @PathVariable Long userId,
+            @RequestParam(defaultValue = "2") int depth,
+            @RequestParam(required = false) Double minX,
+            @RequestParam(required = false) Double minY,
+            @RequestParam(required = false) Double maxX,
+            @RequestParam(required = false) Double maxY) {
+        TreeLayoutDTO layout = requestCoalescer.ejecutar(
+                "layout:" + userId + ":" + depth + ":" + minX + ":" + minY + ":" + maxX + ":" + maxY,
+                () -> treeLayoutService.getLayout(userId, depth, minX, minY, maxX, maxY));
+        return ResponseEntity.ok(layout);
+    }
+
     //confirmaciones pendientes
     @GetMapping("/{userId}/pending-confirmations")
     public ResponseEntity<List<PendingConfirmationDTO>> getPendingConfirmations(@PathVariable Long userId) {
-        List<PendingConfirmationDTO> pendingConfirmations = userService.getPendingConfirmations(userId);
+        List<PendingConfirmationDTO> pendingConfirmations = requestCoalescer.ejecutar(
+                "pending-confirmations:" + userId, () -> userService.getPendingConfirmations(userId));
         return ResponseEntity.ok(pendingConfirmations);
     }
 
@@ -118,4 +180,93 @@ public class UserController {
         return ResponseEntity.ok(kinship);
     }
 
+    //Estadísticas de la familia del usuario
+    @GetMapping("/{userId}/family-stats")
+    public ResponseEntity<FamilyStatsDTO> getFamilyStats(@PathVariable Long userId) {
+        FamilyStatsDTO stats = familyStatsService.getFamilyStats(userId);
+        return ResponseEntity.ok(stats);
+    }
+
+    //Stream SSE con los cambios del árbol de la familia del usuario
+    @GetMapping(value = "/{userId}/family-events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeFamilyEvents(@PathVariable Long userId) {
+        // Inicializa la familia si el usuario es anterior a las estadísticas
+        Long familiaId = familyStatsService.getFamiliaId(userId);
+        return treeEventService.suscribir(familiaId, userId);
+    }
+
+    //Expandir la siguiente capa de un nodo (antecesor, sucesor o conyuge), paginada con cursor
+    @GetMapping("/{userId}/expand")
+    public ResponseEntity<ExpandResponseDTO> expand(
+            @PathVariable Long userId,
+            @RequestParam String direction,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        ExpandResponseDTO expansion = expandService.expand(userId, direction, cursor, limit);
+        return ResponseEntity.ok(expansion);
+    }
+
+    //Expandir varios nodos de la frontera en una sola llamada
+    @PostMapping("/expand")
+    public ResponseEntity<List<ExpandResponseDTO>> expandAll(@Valid @RequestBody ExpandRequest request) {
+        List<ExpandResponseDTO> expansions = expandService.expandAll(
+                request.getIds(), request.getDirection(), request.getCursors(), request.getLimit());
+        return ResponseEntity.ok(expansions);
+    }
+
+    //Vecindario de una o varias raíces como nodos + aristas, sin repetir personas
+    @GetMapping("/graph")
+    public ResponseEntity<FamilyGraphDTO> getGraph(@Valid NeighbourhoodRequest request) {
+        FamilyGraphDTO graph = neighbourhoodService.getNeighbourhood(request.getRoots(), request.getDepth());
+        return ResponseEntity.ok(graph);
+    }
+
+    //Lanzar en segundo plano la búsqueda de personas duplicadas
+    @PostMapping("/duplicates/scan")
+    public ResponseEntity<DuplicateScanStatusDTO> startDuplicateScan() {
+        DuplicateScanStatusDTO estado = duplicateDetectionService.iniciarEscaneo();
+        return ResponseEntity.accepted().body(estado);
+    }
+
+    //Progreso de la última búsqueda de duplicados
+    @GetMapping("/duplicates/scan")
+    public ResponseEntity<DuplicateScanStatusDTO> getDuplicateScanStatus() {
+        return ResponseEntity.ok(duplicateDetectionService.getEstado());
+    }
+
+    //Posibles duplicados pendientes de revisión, de mayor a menor puntaje
+    @GetMapping("/duplicates")
+    public ResponseEntity<List<DuplicateCandidateDTO>> getDuplicateCandidates() {
+        return ResponseEntity.ok(duplicateDetectionService.getCandidatosPendientes());
+    }
+
+    //Fusionar un par duplicado conservando el usuario indicado
+    @PostMapping("/duplicates/{candidateId}/merge")
+    public ResponseEntity<String> mergeDuplicate(
+            @PathVariable Long candidateId,
+            @Valid @RequestBody MergeRequest request) {
+        userMergeService.merge(candidateId, request.getSurvivorId());
+        return ResponseEntity.ok("Usuarios fusionados exitosamente");
+    }
+
+    //Descartar un par que no es la misma persona
+    @PostMapping("/duplicates/{candidateId}/dismiss")
+    public ResponseEntity<String> dismissDuplicate(@PathVariable Long candidateId) {
+        duplicateDetectionService.descartar(candidateId);
+        return ResponseEntity.ok("Candidato descartado");
+    }
+
+    //Lanzar en segundo plano la verificación completa de integridad del grafo
+    @PostMapping("/integrity/scan")
+    public ResponseEntity<IntegrityReportDTO> startIntegrityScan() {
+        IntegrityReportDTO informe = graphIntegrityService.iniciarEscaneo();
+        return ResponseEntity.accepted().body(informe);
+    }
+
+    //Informe de la última verificación de integridad
+    @GetMapping("/integrity/report")
+    public ResponseEntity<IntegrityReportDTO> getIntegrityReport() {
+        return ResponseEntity.ok(graphIntegrityService.getInforme());
+    }
+
 }
\ No newline at end of file
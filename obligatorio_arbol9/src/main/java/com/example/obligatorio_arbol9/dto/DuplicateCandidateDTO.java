@@ -0,0 +1,19 @@
+package com.example.obligatorio_arbol9.dto;
+
+import com.example.obligatorio_arbol9.entity.DuplicateStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DuplicateCandidateDTO {
+    private Long id;
+    private double score;
+    private DuplicateStatus estado;
+    private UserSummaryDTO usuarioA;
+    private UserSummaryDTO usuarioB;
+}
@@ -0,0 +1,23 @@
+package com.example.obligatorio_arbol9.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DuplicateScanStatusDTO {
+    private boolean enCurso;
+    private LocalDateTime inicio;
+    private LocalDateTime fin;
+    private long filasLeidas;
+    private long bloquesCandidatos;  // Claves de bloqueo con más de una persona
+    private long paresComparados;
+    private long candidatosNuevos;
+    private String error;
+}
@@ -0,0 +1,22 @@
+package com.example.obligatorio_arbol9.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class EdgeDTO {
+
+    public enum Tipo {
+        PADRE, // desdeId es hijo de hastaId
+        CONYUGE
+    }
+
+    private Long desdeId;
+    private Long hastaId;
+    private Tipo tipo;
+}
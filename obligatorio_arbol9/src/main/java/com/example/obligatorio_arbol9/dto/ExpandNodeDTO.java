@@ -0,0 +1,27 @@
+package com.example.obligatorio_arbol9.dto;
+
+import com.example.obligatorio_arbol9.entity.ConfirmationStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ExpandNodeDTO {
+    private Long id;
+    private String nombre;
+    private LocalDate fechaNacimiento;
+    private LocalDate fechaFallecimiento;
+    private String email;
+    private ConfirmationStatus confirmationStatus;
+    private int cantidadPadres;
+    private int cantidadHijos;
+    private int cantidadConyuges;
+    private boolean tieneAntecesores; // Se puede seguir expandiendo hacia arriba
+    private boolean tieneSucesores;   // Se puede seguir expandiendo hacia abajo
+}
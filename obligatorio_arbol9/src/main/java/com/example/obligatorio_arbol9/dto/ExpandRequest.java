@@ -0,0 +1,30 @@
+package com.example.obligatorio_arbol9.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExpandRequest {
+
+    public static final int MAXIMO_IDS = 200;
+
+    @NotEmpty
+    @Size(max = MAXIMO_IDS)
+    private List<Long> ids; // Nodos de la frontera a expandir
+
+    private Map<Long, String> cursors; // nextCursor de la página anterior de cada nodo; sin cursor empieza desde el principio
+
+    @NotNull
+    private String direction; // "antecesor", "sucesor" o "conyuge"
+
+    private Integer limit;
+}
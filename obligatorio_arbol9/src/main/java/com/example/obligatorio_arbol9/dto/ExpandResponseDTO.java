@@ -0,0 +1,21 @@
+package com.example.obligatorio_arbol9.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ExpandResponseDTO {
+    private Long id;                 // Nodo expandido
+    private String direction;        // "antecesor", "sucesor" o "conyuge"
+    private int total;               // Cantidad total de vecinos en esa dirección
+    private List<ExpandNodeDTO> nodos;
+    private boolean hasMore;
+    private String nextCursor;       // Se envía como cursor para pedir la página siguiente
+}
@@ -0,0 +1,20 @@
+package com.example.obligatorio_arbol9.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Vecindario como grafo plano: cada persona aparece una sola vez aunque se llegue por varios caminos
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FamilyGraphDTO {
+    private List<Long> raices;
+    private int depth;
+    private List<UserSummaryDTO> nodos;
+    private List<EdgeDTO> aristas;
+}
@@ -0,0 +1,28 @@
+package com.example.obligatorio_arbol9.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FamilyStatsDTO {
+    private Long familiaId;
+    private long miembros;
+    // Relativos a la persona consultada: ancestros y descendientes en línea directa,
+    // y generaciones desde su ancestro más lejano hasta su descendiente más lejano
+    private long ancestros;
+    private long descendientes;
+    private int generaciones;
+    private long vivos;
+    private long fallecidos;
+    private Double promedioAniosVida;
+    private Map<Integer, Long> distribucionLongevidad; // década -> cantidad
+    private long confirmados;
+    private double coberturaConfirmacion; // confirmados / miembros
+}
@@ -0,0 +1,27 @@
+package com.example.obligatorio_arbol9.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IntegrityReportDTO {
+    private boolean enCurso;
+    private LocalDateTime inicio;
+    private LocalDateTime fin;
+    private long usuarios;
+    private long aristasPadre;
+    private long aristasConyuge;
+    private long totalViolaciones;
+    @Builder.Default
+    private List<IntegrityViolationDTO> violaciones = new ArrayList<>();  // Sólo las primeras del informe
+    private String error;
+}
@@ -0,0 +1,26 @@
+package com.example.obligatorio_arbol9.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IntegrityViolationDTO {
+
+    public enum Tipo {
+        CICLO,                  // ids: camino de hijo a ancestro que vuelve al primero
+        MAS_DE_DOS_PADRES,      // ids: hijo seguido de sus padres
+        HIJO_ANTES_QUE_PADRE,   // ids: hijo, padre
+        CONYUGE_DUPLICADO       // ids: la pareja, guardada en los dos sentidos
+    }
+
+    private Tipo tipo;
+    private List<Long> ids;
+    private String detalle;
+}
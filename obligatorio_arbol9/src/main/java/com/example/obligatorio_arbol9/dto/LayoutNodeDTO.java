@@ -0,0 +1,24 @@
+package com.example.obligatorio_arbol9.dto;
+
+import com.example.obligatorio_arbol9.entity.ConfirmationStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class LayoutNodeDTO {
+    private Long id;
+    private String nombre;
+    private LocalDate fechaNacimiento;
+    private LocalDate fechaFallecimiento;
+    private ConfirmationStatus confirmationStatus;
+    private double x;        // Esquina superior izquierda del nodo
+    private double y;
+    private int generacion;  // Negativa hacia los ancestros, positiva hacia los descendientes
+}
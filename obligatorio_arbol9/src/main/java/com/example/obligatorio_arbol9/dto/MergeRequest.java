@@ -0,0 +1,14 @@
+package com.example.obligatorio_arbol9.dto;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MergeRequest {
+    @NotNull
+    private Long survivorId; // Usuario que se conserva; el otro del par se elimina
+}
@@ -0,0 +1,25 @@
+package com.example.obligatorio_arbol9.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Parámetros de GET /graph; "roots=1,,2" deja un null en la lista y se rechaza con 400
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NeighbourhoodRequest {
+
+    public static final int MAXIMO_RAICES = 50;
+
+    @NotEmpty
+    @Size(max = MAXIMO_RAICES)
+    private List<@NotNull Long> roots;
+
+    private int depth = 2;
+}
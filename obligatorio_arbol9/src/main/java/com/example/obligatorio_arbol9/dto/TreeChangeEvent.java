@@ -0,0 +1,40 @@
+package com.example.obligatorio_arbol9.dto;
+
+import com.example.obligatorio_arbol9.entity.ConfirmationStatus;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Cambio compacto del árbol que se envía por SSE a los clientes que miran la misma familia
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TreeChangeEvent {
+
+    public enum Tipo {
+        NODO_AGREGADO,
+        NODO_ACTUALIZADO,
+        NODO_ELIMINADO,
+        ARISTA_AGREGADA,
+        ARISTA_QUITADA,
+        CONFIRMACION_CAMBIADA,
+        RESINCRONIZAR // El cliente perdió eventos y debe volver a pedir el árbol
+    }
+
+    public enum Relacion {
+        PADRE, // desdeId es hijo de hastaId
+        CONYUGE
+    }
+
+    private Tipo tipo;
+    private Long id;
+    private UserSummaryDTO nodo;
+    private Relacion relacion;
+    private Long desdeId;
+    private Long hastaId;
+    private ConfirmationStatus confirmationStatus;
+}
@@ -0,0 +1,29 @@
+package com.example.obligatorio_arbol9.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Diagramación calculada en el servidor; nodos y aristas sólo de la ventana pedida
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TreeLayoutDTO {
+    private Long raiz;
+    private int depth;
+    private Long version; // Versión del grafo con la que se calculó el diagrama
+    private double anchoNodo;
+    private double altoNodo;
+    // Límites del diagrama completo, para dimensionar el área desplazable
+    private double minX;
+    private double minY;
+    private double maxX;
+    private double maxY;
+    private int totalNodos;
+    private List<LayoutNodeDTO> nodos;
+    private List<EdgeDTO> aristas;
+}
@@ -0,0 +1,38 @@
+package com.example.obligatorio_arbol9.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// Par de usuarios que probablemente son la misma persona, pendiente de revisión
+@Entity
+@Table(name = "duplicate_candidates", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"userAId", "userBId"})
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DuplicateCandidate {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Siempre userAId < userBId
+    @Column(nullable = false)
+    private Long userAId;
+
+    @Column(nullable = false)
+    private Long userBId;
+
+    private double score;
+
+    @Enumerated(EnumType.STRING)
+    @Builder.Default
+    private DuplicateStatus estado = DuplicateStatus.PENDIENTE;
+
+    private LocalDateTime detectado;
+}
@@ -0,0 +1,7 @@
+package com.example.obligatorio_arbol9.entity;
+
+public enum DuplicateStatus {
+    PENDIENTE,
+    FUSIONADO,
+    DESCARTADO
+}
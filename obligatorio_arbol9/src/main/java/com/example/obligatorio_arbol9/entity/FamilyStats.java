@@ -0,0 +1,50 @@
+package com.example.obligatorio_arbol9.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Agregados de una familia (componente conexo del árbol), mantenidos en cada mutación
+@Entity
+@Table(name = "family_stats")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FamilyStats {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Se incrementa en cada cambio de la familia
+    @Version
+    private Long version;
+
+    @Builder.Default
+    private long miembros = 0;
+
+    @Builder.Default
+    private long vivos = 0;
+
+    @Builder.Default
+    private long fallecidos = 0;
+
+    @Builder.Default
+    private long confirmados = 0;
+
+    // Suma de años vividos por los fallecidos, para el promedio
+    @Builder.Default
+    private long sumaAniosVida = 0;
+
+    // Distribución de longevidad de los fallecidos: década (0, 10, 20, ...) -> cantidad
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "family_stats_longevidad", joinColumns = @JoinColumn(name = "family_id"))
+    @MapKeyColumn(name = "decada")
+    @Column(name = "cantidad")
+    @Builder.Default
+    private Map<Integer, Long> distribucionLongevidad = new HashMap<>();
+}
@@ -0,0 +1,30 @@
+package com.example.obligatorio_arbol9.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+// Registro de cambios del grafo de relaciones, para reaplicar lo escrito después del último snapshot
+@Entity
+@Table(name = "graph_change_log")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class GraphChange {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long seq;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private GraphChangeType tipo;
+
+    // Nodo afectado; en las aristas, el hijo / usuario confirmado / primer cónyuge
+    @Column(nullable = false)
+    private Long desdeId;
+
+    // Otro extremo de la arista (padre / confirmador / segundo cónyuge), null para nodos
+    private Long hastaId;
+}
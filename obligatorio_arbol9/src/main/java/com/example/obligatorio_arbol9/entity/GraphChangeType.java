@@ -0,0 +1,11 @@
+package com.example.obligatorio_arbol9.entity;
+
+public enum GraphChangeType {
+    NODO_AGREGADO,
+    NODO_ELIMINADO,
+    PADRE_AGREGADO,
+    PADRE_QUITADO,
+    CONYUGE_AGREGADO,
+    CONYUGE_QUITADO,
+    CONFIRMACION_AGREGADA
+}
@@ -0,0 +1,49 @@
+package com.example.obligatorio_arbol9.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// Evento escrito en la misma transacción que la mutación; lo consume el proyector del modelo de lectura
+@Entity
+@Table(name = "outbox_events")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private OutboxEventType tipo;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    private Long relacionadoId;
+
+    // IDs cuyas filas de lectura hay que recalcular, tomados antes de confirmar
+    // (en una baja el grafo ya no conoce a los vecinos del eliminado cuando se procesa)
+    @Lob
+    private String afectados;
+
+    // Último cambio del grafo registrado en la misma transacción: el proyector espera a que el grafo en
+    // memoria lo tenga aplicado antes de procesar el evento. Null si la transacción no tocó el grafo.
+    private Long seqGrafo;
+
+    // Proyecciones fallidas; pasado el máximo el evento queda apartado (fallido) y no bloquea al resto
+    @Column(nullable = false)
+    private int intentos;
+
+    @Column(nullable = false)
+    private boolean fallido;
+
+    @Column(nullable = false)
+    private LocalDateTime creado;
+}
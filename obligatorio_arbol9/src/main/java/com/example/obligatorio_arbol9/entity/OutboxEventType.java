@@ -0,0 +1,8 @@
+package com.example.obligatorio_arbol9.entity;
+
+public enum OutboxEventType {
+    USUARIO_CREADO,
+    USUARIO_ACTUALIZADO,
+    USUARIO_ELIMINADO,
+    RELACION_AGREGADA
+}
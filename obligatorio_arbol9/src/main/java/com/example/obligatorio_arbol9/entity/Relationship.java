@@ -0,0 +1,38 @@
+package com.example.obligatorio_arbol9.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+// Todas las relaciones entre personas en una sola tabla con tipo.
+// La clave primaria (from_id, type, to_id) resuelve las búsquedas hacia adelante y el índice
+// (to_id, type, from_id) las inversas; ambos cubren la consulta de vecinos sin leer la fila.
+// Las colecciones de User se guardan en esta misma tabla.
+@Entity
+@Table(name = "relationship", indexes = {
+        @Index(name = "idx_relationship_to", columnList = "to_id, type, from_id")
+})
+@IdClass(RelationshipId.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Relationship {
+
+    @Id
+    @Column(name = "from_id")
+    private Long fromId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", length = 20)
+    private RelationshipType tipo;
+
+    @Id
+    @Column(name = "to_id")
+    private Long toId;
+
+    // Datos opcionales de la relación (por ejemplo, fechas de un matrimonio) en JSON
+    @Column(length = 1000)
+    private String metadata;
+}
@@ -0,0 +1,16 @@
+package com.example.obligatorio_arbol9.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RelationshipId implements Serializable {
+    private Long fromId;
+    private RelationshipType tipo;
+    private Long toId;
+}
@@ -0,0 +1,7 @@
+package com.example.obligatorio_arbol9.entity;
+
+public enum RelationshipType {
+    PADRE,        // from_id es hijo de to_id
+    CONYUGE,      // una sola fila por pareja, en cualquier sentido
+    CONFIRMACION  // from_id fue confirmado por to_id
+}
@@ -5,6 +5,10 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import lombok.*;
+import org.hibernate.annotations.SQLDelete;
+import org.hibernate.annotations.SQLDeleteAll;
+import org.hibernate.annotations.SQLInsert;
+import org.hibernate.annotations.SQLJoinTableRestriction;
 
 import java.time.LocalDate;
 import java.util.HashSet;
@@ -14,6 +18,8 @@ import java.util.stream.Collectors;
 @Entity
 @Table(name = "users", uniqueConstraints = {
         @UniqueConstraint(columnNames = "email")
+}, indexes = {
+        @Index(name = "idx_users_familia", columnList = "familiaId")
 })
 @Getter
 @Setter
@@ -39,45 +45,75 @@ public class User {
 
     private Integer grado;
 
+    // Familia (componente conexo) a la que pertenece, ver FamilyStats
+    private Long familiaId;
+
     // Estado de confirmación: PENDING, CONFIRMED
     @Enumerated(EnumType.STRING)
     @Builder.Default
     private ConfirmationStatus confirmationStatus = ConfirmationStatus.PENDING;
 
+    // Las relaciones se guardan en la tabla única "relationship" (ver Relationship); cada colección
+    // lee y escribe sólo las filas de su tipo. Se usan para escribir: los recorridos y los árboles que
+    // devuelve la API salen del grafo en memoria (FamilyGraphService), no de estas colecciones.
+
     // Familias que han confirmado
     @ManyToMany
     @JoinTable(
-            name = "user_confirmations",
-            joinColumns = @JoinColumn(name = "user_id"),
-            inverseJoinColumns = @JoinColumn(name = "confirmed_by_id")
+            name = "relationship",
+            joinColumns = @JoinColumn(name = "from_id"),
+            inverseJoinColumns = @JoinColumn(name = "to_id")
     )
+    @SQLJoinTableRestriction("type = 'CONFIRMACION'")
+    @SQLInsert(sql = "INSERT INTO relationship (from_id, to_id, type) VALUES (?, ?, 'CONFIRMACION')")
+    @SQLDelete(sql = "DELETE FROM relationship WHERE from_id = ? AND to_id = ? AND type = 'CONFIRMACION'")
+    @SQLDeleteAll(sql = "DELETE FROM relationship WHERE from_id = ? AND type = 'CONFIRMACION'")
     @JsonIgnore
     private Set<User> confirmedBy = new HashSet<>();
 
     // Padres
     @ManyToMany
     @JoinTable(
-            name = "user_parents",
-            joinColumns = @JoinColumn(name = "user_id"),
-            inverseJoinColumns = @JoinColumn(name = "parent_id")
+            name = "relationship",
+            joinColumns = @JoinColumn(name = "from_id"),
+            inverseJoinColumns = @JoinColumn(name = "to_id")
     )
+    @SQLJoinTableRestriction("type = 'PADRE'")
+    @SQLInsert(sql = "INSERT INTO relationship (from_id, to_id, type) VALUES (?, ?, 'PADRE')")
+    @SQLDelete(sql = "DELETE FROM relationship WHERE from_id = ? AND to_id = ? AND type = 'PADRE'")
+    @SQLDeleteAll(sql = "DELETE FROM relationship WHERE from_id = ? AND type = 'PADRE'")
+    @JsonIgnore
     @Builder.Default
     private Set<User> padres = new HashSet<>();
 
     // Hijos
     @ManyToMany(mappedBy = "padres")
+    @SQLJoinTableRestriction("type = 'PADRE'")
+    @JsonIgnore
     @Builder.Default
     private Set<User> hijos = new HashSet<>();
 
-    // Cónyuges
+    // Cónyuges: una sola fila por pareja, del que la registró (from_id) al otro
     @ManyToMany
     @JoinTable(
-            name = "user_conyuges",
-            joinColumns = @JoinColumn(name = "user_id"),
-            inverseJoinColumns = @JoinColumn(name = "conyuge_id")
+            name = "relationship",
+            joinColumns = @JoinColumn(name = "from_id"),
+            inverseJoinColumns = @JoinColumn(name = "to_id")
     )
+    @SQLJoinTableRestriction("type = 'CONYUGE'")
+    @SQLInsert(sql = "INSERT INTO relationship (from_id, to_id, type) VALUES (?, ?, 'CONYUGE')")
+    @SQLDelete(sql = "DELETE FROM relationship WHERE from_id = ? AND to_id = ? AND type = 'CONYUGE'")
+    @SQLDeleteAll(sql = "DELETE FROM relationship WHERE from_id = ? AND type = 'CONYUGE'")
+    @JsonIgnore
     @Builder.Default
-    private Set<User> conyuges = new HashSet<>();
+    private Set<User> conyugesRegistrados = new HashSet<>();
+
+    // La fila de la pareja puede estar en cualquiera de los dos; se agrega una sola vez
+    public void agregarConyuge(User conyuge) {
+        if (!conyuge.getConyugesRegistrados().contains(this)) {
+            conyugesRegistrados.add(conyuge);
+        }
+    }
 
     // Getter personalizado para serializar solo los IDs de confirmedBy
     @JsonProperty("confirmedBy")
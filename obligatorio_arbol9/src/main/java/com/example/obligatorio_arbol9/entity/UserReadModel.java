@@ -0,0 +1,53 @@
+package com.example.obligatorio_arbol9.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Fila desnormalizada por persona, mantenida por el proyector a partir del outbox
+@Entity
+@Table(name = "user_read_model")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserReadModel {
+
+    // Mismo ID que el usuario
+    @Id
+    private Long id;
+
+    private String nombre;
+
+    private LocalDate fechaNacimiento;
+
+    private LocalDate fechaFallecimiento;
+
+    private String email;
+
+    @Enumerated(EnumType.STRING)
+    private ConfirmationStatus confirmationStatus;
+
+    private Integer grado;
+
+    private Long familiaId;
+
+    // IDs de los vecinos separados por coma
+    @Lob
+    private String padresIds;
+
+    @Lob
+    private String hijosIds;
+
+    @Lob
+    private String conyugesIds;
+
+    // UserTreeDTO de profundidad 2 serializado en JSON
+    @Lob
+    private String arbol;
+
+    private LocalDateTime actualizado;
+}
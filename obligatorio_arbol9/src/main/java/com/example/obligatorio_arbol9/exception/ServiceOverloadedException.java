@@ -0,0 +1,16 @@
+package com.example.obligatorio_arbol9.exception;
+
+// Se lanza cuando no hay capacidad para atender el pedido; el cliente debería reintentar más tarde
+public class ServiceOverloadedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public ServiceOverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.obligatorio_arbol9.repository;
+
+import com.example.obligatorio_arbol9.entity.DuplicateCandidate;
+import com.example.obligatorio_arbol9.entity.DuplicateStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface DuplicateCandidateRepository extends JpaRepository<DuplicateCandidate, Long> {
+    List<DuplicateCandidate> findByEstadoOrderByScoreDesc(DuplicateStatus estado);
+
+    // Los candidatos pendientes que involucran a un usuario fusionado dejan de tener sentido
+    @Modifying
+    @Query("UPDATE DuplicateCandidate c SET c.estado = :estado " +
+            "WHERE c.estado = com.example.obligatorio_arbol9.entity.DuplicateStatus.PENDIENTE " +
+            "AND (c.userAId = :userId OR c.userBId = :userId)")
+    int updatePendingInvolving(@Param("userId") Long userId, @Param("estado") DuplicateStatus estado);
+}
@@ -0,0 +1,20 @@
+package com.example.obligatorio_arbol9.repository;
+
+import com.example.obligatorio_arbol9.entity.FamilyStats;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface FamilyStatsRepository extends JpaRepository<FamilyStats, Long> {
+
+    // Bloquea la fila para que mutaciones concurrentes de la misma familia no pierdan incrementos
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT f FROM FamilyStats f WHERE f.id = :id")
+    Optional<FamilyStats> findByIdForUpdate(@Param("id") Long id);
+}
@@ -0,0 +1,12 @@
+package com.example.obligatorio_arbol9.repository;
+
+import com.example.obligatorio_arbol9.entity.GraphChange;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface GraphChangeRepository extends JpaRepository<GraphChange, Long> {
+    List<GraphChange> findAllByOrderBySeqAsc();
+}
@@ -0,0 +1,13 @@
+package com.example.obligatorio_arbol9.repository;
+
+import com.example.obligatorio_arbol9.entity.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    List<OutboxEvent> findAllByFallidoFalseOrderByIdAsc(Pageable pageable);
+}
@@ -0,0 +1,46 @@
+package com.example.obligatorio_arbol9.repository;
+
+import com.example.obligatorio_arbol9.entity.Relationship;
+import com.example.obligatorio_arbol9.entity.RelationshipId;
+import com.example.obligatorio_arbol9.entity.RelationshipType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface RelationshipRepository extends JpaRepository<Relationship, RelationshipId> {
+
+    // Arista sin metadata: se resuelve sólo con los índices
+    interface Edge {
+        Long getFromId();
+
+        Long getToId();
+
+        RelationshipType getTipo();
+    }
+
+    // Todas las relaciones (de cualquier tipo y sentido) de un conjunto de personas en una sola consulta:
+    // la clave primaria cubre las salientes e idx_relationship_to las entrantes
+    @Query("SELECT r.fromId AS fromId, r.toId AS toId, r.tipo AS tipo FROM Relationship r " +
+            "WHERE r.fromId IN :ids OR r.toId IN :ids")
+    List<Edge> findEdgesOf(@Param("ids") Collection<Long> ids);
+
+    // Padres e hijos leídos con bloqueo: ven lo último confirmado (no la foto de la transacción)
+    @Query(value = "SELECT to_id FROM relationship WHERE from_id IN :ids AND type = 'PADRE' FOR UPDATE",
+            nativeQuery = true)
+    List<Number> lockParentIds(@Param("ids") Collection<Long> ids);
+
+    @Query(value = "SELECT from_id FROM relationship WHERE to_id IN :ids AND type = 'PADRE' FOR UPDATE",
+            nativeQuery = true)
+    List<Number> lockChildIds(@Param("ids") Collection<Long> ids);
+
+    // Borra todas las relaciones de una persona, en los dos sentidos
+    @Modifying
+    @Query("DELETE FROM Relationship r WHERE r.fromId = :id OR r.toId = :id")
+    int deleteAllOf(@Param("id") Long id);
+}
@@ -0,0 +1,19 @@
+package com.example.obligatorio_arbol9.repository;
+
+import com.example.obligatorio_arbol9.entity.UserReadModel;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface UserReadModelRepository extends JpaRepository<UserReadModel, Long> {
+
+    // Paginado por id: los siguientes usuarios sin fila de lectura con id mayor a desde
+    @Query("SELECT u.id FROM User u WHERE u.id > :desde " +
+            "AND NOT EXISTS (SELECT r.id FROM UserReadModel r WHERE r.id = u.id) ORDER BY u.id")
+    List<Long> findUserIdsWithoutReadModel(@Param("desde") Long desde, Pageable pagina);
+}
@@ -2,8 +2,12 @@ package com.example.obligatorio_arbol9.repository;
 
 import com.example.obligatorio_arbol9.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,4 +17,16 @@ public interface UserRepository extends JpaRepository<User, Long> {
     List<User> findAllByNombre(String nombre);
     List<User> findByGrado(Integer grado);
     Optional<User> findByNombre(String nombre);
+
+    // Lee (id, familia_id) de los usuarios indicados bloqueando sus filas, siempre en orden de id
+    @Query(value = "SELECT id, familia_id FROM users WHERE id IN :ids ORDER BY id FOR UPDATE", nativeQuery = true)
+    List<Object[]> lockFamilias(@Param("ids") Collection<Long> ids);
+
+    // Bloquea las filas de los usuarios indicados, siempre en orden de id
+    @Query(value = "SELECT id FROM users WHERE id IN :ids ORDER BY id FOR UPDATE", nativeQuery = true)
+    List<Number> lockUsers(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("UPDATE User u SET u.familiaId = :destinoId WHERE u.familiaId = :origenId")
+    int moveToFamily(@Param("origenId") Long origenId, @Param("destinoId") Long destinoId);
 }
\ No newline at end of file
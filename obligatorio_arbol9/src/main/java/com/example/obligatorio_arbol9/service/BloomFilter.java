@@ -0,0 +1,46 @@
+package com.example.obligatorio_arbol9.service;
+
+import java.nio.charset.StandardCharsets;
+
+// Filtro de Bloom simple sobre un long[]; usa doble hashing a partir de un FNV-1a de 64 bits
+class BloomFilter {
+
+    private final long[] bits;
+    private final long cantidadBits;
+    private final int funciones;
+
+    BloomFilter(long elementosEsperados, double probabilidadFalsoPositivo) {
+        long n = Math.max(1, elementosEsperados);
+        long m = (long) Math.ceil(-n * Math.log(probabilidadFalsoPositivo) / (Math.log(2) * Math.log(2)));
+        this.cantidadBits = Math.max(64, m);
+        this.bits = new long[(int) ((cantidadBits + 63) / 64)];
+        this.funciones = Math.max(1, (int) Math.round((double) cantidadBits / n * Math.log(2)));
+    }
+
+    // Agrega la clave y devuelve true si (probablemente) ya estaba
+    boolean agregar(String clave) {
+        long hash = fnv1a(clave);
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        boolean estaba = true;
+        for (int i = 0; i < funciones; i++) {
+            long bit = Math.floorMod(h1 + i * h2, cantidadBits);
+            int palabra = (int) (bit >>> 6);
+            long mascara = 1L << (bit & 63);
+            if ((bits[palabra] & mascara) == 0) {
+                estaba = false;
+                bits[palabra] |= mascara;
+            }
+        }
+        return estaba;
+    }
+
+    private static long fnv1a(String clave) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : clave.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
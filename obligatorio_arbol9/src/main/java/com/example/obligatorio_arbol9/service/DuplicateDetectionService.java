@@ -0,0 +1,471 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.dto.DuplicateCandidateDTO;
+import com.example.obligatorio_arbol9.dto.DuplicateScanStatusDTO;
+import com.example.obligatorio_arbol9.dto.UserSummaryDTO;
+import com.example.obligatorio_arbol9.entity.DuplicateCandidate;
+import com.example.obligatorio_arbol9.entity.DuplicateStatus;
+import com.example.obligatorio_arbol9.entity.User;
+import com.example.obligatorio_arbol9.repository.DuplicateCandidateRepository;
+import com.example.obligatorio_arbol9.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Detección de personas duplicadas (resolución de entidades) en segundo plano.
+// Evita la comparación cuadrática: sólo se comparan personas que comparten alguna clave de bloqueo
+// (clave fonética de una de las palabras del nombre + año de nacimiento), y un filtro de Bloom descarta
+// en una primera pasada las claves que aparecen una sola vez. Dentro de un bloque los nombres pueden
+// diferir en el resto de las palabras o en la ortografía; eso lo mide Jaro-Winkler.
+@Service
+public class DuplicateDetectionService {
+
+    private static final Logger log = LoggerFactory.getLogger(DuplicateDetectionService.class);
+
+    private static final double UMBRAL = 0.85;
+    private static final double FALSO_POSITIVO_BLOOM = 0.01;
+    // Dentro de un bloque ordenado por fecha de nacimiento, cada persona se compara sólo con las siguientes
+    private static final int VENTANA = 25;
+    // Bloques por tarea fork/join antes de dividir
+    private static final int UMBRAL_TAREA = 64;
+    private static final int FETCH_SIZE = 1000;
+    private static final int LOTE_INSERCION = 1000;
+    // Filas que se leen para estimar cuántas claves de bloqueo da cada una
+    private static final int MUESTRA_CLAVES = 1000;
+    // Largo de la clave fonética de cada palabra
+    private static final int LARGO_CLAVE = 4;
+    // Palabras que no sirven para agrupar
+    private static final Set<String> PARTICULAS = Set.of("de", "del", "la", "las", "los", "y");
+
+    private static final String CONSULTA_FILAS =
+            "SELECT id, nombre, fecha_nacimiento, fecha_fallecimiento FROM users";
+    private static final String INSERTAR_CANDIDATO =
+            "INSERT IGNORE INTO duplicate_candidates (useraid, userbid, score, estado, detectado) " +
+                    "VALUES (?, ?, ?, ?, ?)";
+
+    @Autowired
+    private DuplicateCandidateRepository duplicateCandidateRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private JdbcTemplate streamingJdbcTemplate;
+
+    private final ExecutorService escaneos = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "duplicate-scan");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile DuplicateScanStatusDTO estado = DuplicateScanStatusDTO.builder().build();
+
+    private record Fila(long id, String nombre, LocalDate fechaNacimiento, LocalDate fechaFallecimiento) {
+    }
+
+    private record Par(long a, long b, double score) {
+    }
+
+    @PostConstruct
+    public void init() {
+        // Lecturas en streaming para no cargar la tabla completa (con useCursorFetch en MySQL)
+        streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        streamingJdbcTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    public synchronized DuplicateScanStatusDTO iniciarEscaneo() {
+        if (estado.isEnCurso()) {
+            throw new RuntimeException("Ya hay un escaneo de duplicados en curso");
+        }
+        estado = DuplicateScanStatusDTO.builder().enCurso(true).inicio(LocalDateTime.now()).build();
+        escaneos.execute(this::escanear);
+        return estado;
+    }
+
+    public DuplicateScanStatusDTO getEstado() {
+        return estado;
+    }
+
+    public List<DuplicateCandidateDTO> getCandidatosPendientes() {
+        List<DuplicateCandidate> candidatos = duplicateCandidateRepository.findByEstadoOrderByScoreDesc(DuplicateStatus.PENDIENTE);
+        Set<Long> ids = new HashSet<>();
+        candidatos.forEach(c -> {
+            ids.add(c.getUserAId());
+            ids.add(c.getUserBId());
+        });
+        Map<Long, User> usuarios = userRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+
+        return candidatos.stream()
+                .filter(c -> usuarios.containsKey(c.getUserAId()) && usuarios.containsKey(c.getUserBId()))
+                .map(c -> DuplicateCandidateDTO.builder()
+                        .id(c.getId())
+                        .score(c.getScore())
+                        .estado(c.getEstado())
+                        .usuarioA(toSummary(usuarios.get(c.getUserAId())))
+                        .usuarioB(toSummary(usuarios.get(c.getUserBId())))
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    @Transactional
+    public void descartar(Long candidatoId) {
+        DuplicateCandidate candidato = duplicateCandidateRepository.findById(candidatoId)
+                .orElseThrow(() -> new RuntimeException("Candidato no encontrado"));
+        candidato.setEstado(DuplicateStatus.DESCARTADO);
+        duplicateCandidateRepository.save(candidato);
+    }
+
+    private void escanear() {
+        AtomicLong filasLeidas = new AtomicLong();
+        // Si el escaneo termina por algo que no es una RuntimeException (por ejemplo falta de memoria),
+        // el estado queda igual marcado como terminado y se puede volver a escanear
+        DuplicateScanStatusDTO.DuplicateScanStatusDTOBuilder resultado = DuplicateScanStatusDTO.builder()
+                .inicio(estado.getInicio())
+                .error("Escaneo interrumpido");
+        try {
+            // El filtro se dimensiona por claves, no por filas: cada fila aporta una clave por palabra del nombre
+            long clavesEsperadas = (long) Math.ceil(userRepository.count() * clavesPorFila());
+
+            // Primera pasada: el filtro de Bloom marca las claves vistas más de una vez
+            BloomFilter vistas = new BloomFilter(clavesEsperadas, FALSO_POSITIVO_BLOOM);
+            Set<String> clavesRepetidas = new HashSet<>();
+            AtomicLong clavesVistas = new AtomicLong();
+            streamingJdbcTemplate.query(CONSULTA_FILAS, rs -> {
+                filasLeidas.incrementAndGet();
+                for (String clave : clavesDeBloqueo(rs.getString(2), rs.getDate(3))) {
+                    clavesVistas.incrementAndGet();
+                    if (vistas.agregar(clave)) {
+                        clavesRepetidas.add(clave);
+                    }
+                }
+            });
+            if (clavesVistas.get() > clavesEsperadas) {
+                log.warn("El filtro de Bloom se dimensionó para {} claves y recibió {}: más falsos positivos de lo previsto",
+                        clavesEsperadas, clavesVistas.get());
+            }
+
+            // Segunda pasada: sólo se guardan en memoria las filas de bloques candidatos
+            // (una fila puede quedar en varios bloques, uno por palabra del nombre)
+            Map<String, List<Fila>> bloques = new HashMap<>();
+            streamingJdbcTemplate.query(CONSULTA_FILAS, rs -> {
+                Fila fila = null;
+                for (String clave : clavesDeBloqueo(rs.getString(2), rs.getDate(3))) {
+                    if (clavesRepetidas.contains(clave)) {
+                        if (fila == null) {
+                            fila = new Fila(rs.getLong(1), rs.getString(2), toLocalDate(rs.getDate(3)), toLocalDate(rs.getDate(4)));
+                        }
+                        bloques.computeIfAbsent(clave, k -> new ArrayList<>()).add(fila);
+                    }
+                }
+            });
+            // Los falsos positivos del filtro dejan bloques de una sola persona
+            List<List<Fila>> conPares = bloques.values().stream()
+                    .filter(bloque -> bloque.size() > 1)
+                    .collect(Collectors.toList());
+
+            AtomicLong comparados = new AtomicLong();
+            List<Par> pares;
+            // Pool propio del escaneo: un escaneo largo no ocupa el pool común que usan los parallel streams
+            ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+            try {
+                pares = pool.invoke(new PuntuarBloques(conPares, 0, conPares.size(), comparados));
+            } finally {
+                pool.shutdown();
+            }
+
+            // El mismo par puede salir de más de un bloque
+            Map<List<Long>, Par> unicos = new HashMap<>();
+            for (Par par : pares) {
+                unicos.putIfAbsent(List.of(par.a(), par.b()), par);
+            }
+            long nuevos = guardarCandidatos(new ArrayList<>(unicos.values()));
+
+            resultado.bloquesCandidatos(conPares.size())
+                    .paresComparados(comparados.get())
+                    .candidatosNuevos(nuevos)
+                    .error(null);
+            log.info("Escaneo de duplicados terminado: {} filas, {} bloques, {} pares comparados, {} candidatos nuevos",
+                    filasLeidas.get(), conPares.size(), comparados.get(), nuevos);
+        } catch (RuntimeException e) {
+            log.warn("Falló el escaneo de duplicados", e);
+            resultado.error(e.getMessage());
+        } finally {
+            estado = resultado.enCurso(false)
+                    .fin(LocalDateTime.now())
+                    .filasLeidas(filasLeidas.get())
+                    .build();
+        }
+    }
+
+    // Promedio de claves de bloqueo por fila en una muestra de la tabla (al menos una)
+    private double clavesPorFila() {
+        long[] filasYClaves = new long[2];
+        jdbcTemplate.query("SELECT nombre, fecha_nacimiento FROM users LIMIT " + MUESTRA_CLAVES, rs -> {
+            filasYClaves[0]++;
+            filasYClaves[1] += clavesDeBloqueo(rs.getString(1), rs.getDate(2)).size();
+        });
+        return filasYClaves[0] == 0 ? 1.0 : Math.max(1.0, (double) filasYClaves[1] / filasYClaves[0]);
+    }
+
+    // Inserta por lotes; la restricción única (useraid, userbid) descarta los pares ya conocidos,
+    // sin importar su estado. Devuelve cuántos se insertaron.
+    private long guardarCandidatos(List<Par> pares) {
+        Timestamp detectado = Timestamp.valueOf(LocalDateTime.now());
+        long nuevos = 0;
+        for (int[] lote : jdbcTemplate.batchUpdate(INSERTAR_CANDIDATO, pares, LOTE_INSERCION, (ps, par) -> {
+            ps.setLong(1, par.a());
+            ps.setLong(2, par.b());
+            ps.setDouble(3, par.score());
+            ps.setString(4, DuplicateStatus.PENDIENTE.name());
+            ps.setTimestamp(5, detectado);
+        })) {
+            for (int filas : lote) {
+                // Algunos drivers no informan la cantidad por fila en un lote
+                nuevos += filas == Statement.SUCCESS_NO_INFO ? 1 : filas;
+            }
+        }
+        return nuevos;
+    }
+
+    // Divide la lista de bloques hasta un tamaño razonable y puntúa cada parte en paralelo
+    private static class PuntuarBloques extends RecursiveTask<List<Par>> {
+        private final List<List<Fila>> bloques;
+        private final int desde;
+        private final int hasta;
+        private final AtomicLong comparados;
+
+        PuntuarBloques(List<List<Fila>> bloques, int desde, int hasta, AtomicLong comparados) {
+            this.bloques = bloques;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.comparados = comparados;
+        }
+
+        @Override
+        protected List<Par> compute() {
+            if (hasta - desde <= UMBRAL_TAREA) {
+                List<Par> pares = new ArrayList<>();
+                for (int i = desde; i < hasta; i++) {
+                    puntuarBloque(bloques.get(i), pares, comparados);
+                }
+                return pares;
+            }
+            int medio = (desde + hasta) >>> 1;
+            PuntuarBloques izquierda = new PuntuarBloques(bloques, desde, medio, comparados);
+            izquierda.fork();
+            List<Par> pares = new PuntuarBloques(bloques, medio, hasta, comparados).compute();
+            pares.addAll(izquierda.join());
+            return pares;
+        }
+    }
+
+    private static void puntuarBloque(List<Fila> bloque, List<Par> pares, AtomicLong comparados) {
+        bloque.sort(Comparator.comparing(Fila::fechaNacimiento, Comparator.nullsLast(Comparator.naturalOrder())));
+        long cuenta = 0;
+        for (int i = 0; i < bloque.size(); i++) {
+            for (int j = i + 1; j < bloque.size() && j <= i + VENTANA; j++) {
+                cuenta++;
+                Fila a = bloque.get(i);
+                Fila b = bloque.get(j);
+                double score = puntuar(a, b);
+                if (score >= UMBRAL) {
+                    pares.add(new Par(Math.min(a.id(), b.id()), Math.max(a.id(), b.id()), score));
+                }
+            }
+        }
+        comparados.addAndGet(cuenta);
+    }
+
+    // Similitud entre 0 y 1: nombre (Jaro-Winkler por palabra), fecha de nacimiento y fecha de fallecimiento
+    private static double puntuar(Fila a, Fila b) {
+        double nombre = similitudNombre(normalizar(a.nombre()), normalizar(b.nombre()));
+        double nacimiento;
+        if (Objects.equals(a.fechaNacimiento(), b.fechaNacimiento())) {
+            nacimiento = 1.0;
+        } else if (a.fechaNacimiento() != null && b.fechaNacimiento() != null
+                && a.fechaNacimiento().getMonth() == b.fechaNacimiento().getMonth()) {
+            nacimiento = 0.5;
+        } else {
+            nacimiento = 0.0;
+        }
+        double fallecimiento;
+        if (Objects.equals(a.fechaFallecimiento(), b.fechaFallecimiento())) {
+            fallecimiento = 1.0;
+        } else if (a.fechaFallecimiento() == null || b.fechaFallecimiento() == null) {
+            fallecimiento = 0.5; // Un registro puede simplemente no tener el dato
+        } else {
+            fallecimiento = 0.0;
+        }
+        return 0.6 * nombre + 0.3 * nacimiento + 0.1 * fallecimiento;
+    }
+
+    // Nombre sin tildes, en minúsculas y con las palabras ordenadas ("Pérez Juan" == "juan perez")
+    private static String normalizar(String nombre) {
+        if (nombre == null) {
+            return "";
+        }
+        String sinTildes = Normalizer.normalize(nombre, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return Arrays.stream(sinTildes.toLowerCase(Locale.ROOT).split("[^a-z0-9]+"))
+                .filter(palabra -> !palabra.isEmpty())
+                .sorted()
+                .collect(Collectors.joining(" "));
+    }
+
+    // Una clave por palabra del nombre: su forma fonética recortada + año de nacimiento.
+    // Dos registros caen en el mismo bloque si comparten, por ejemplo, el apellido aunque el resto difiera.
+    private static Set<String> clavesDeBloqueo(String nombre, Date fechaNacimiento) {
+        String normalizado = normalizar(nombre);
+        if (normalizado.isEmpty() || fechaNacimiento == null) {
+            return Set.of();
+        }
+        int anio = fechaNacimiento.toLocalDate().getYear();
+        Set<String> claves = new HashSet<>();
+        for (String palabra : normalizado.split(" ")) {
+            if (palabra.length() > 1 && !PARTICULAS.contains(palabra)) {
+                String fonetica = fonetica(palabra);
+                claves.add(fonetica.substring(0, Math.min(LARGO_CLAVE, fonetica.length())) + "|" + anio);
+            }
+        }
+        return claves;
+    }
+
+    // Clave fonética simple para el español: unifica las letras que suenan igual
+    // ("Vázquez" y "Basques" dan "bask") y quita las letras repetidas
+    private static String fonetica(String palabra) {
+        String clave = palabra
+                .replace("h", "")
+                .replace("ll", "y")
+                .replace("qu", "k")
+                .replaceAll("c([ei])", "s$1")
+                .replace("c", "k")
+                .replace("z", "s")
+                .replace("v", "b")
+                .replace("w", "b")
+                .replace("x", "ks")
+                .replaceAll("g([ei])", "j$1");
+        StringBuilder sinRepetidas = new StringBuilder();
+        for (char c : clave.toCharArray()) {
+            if (sinRepetidas.length() == 0 || sinRepetidas.charAt(sinRepetidas.length() - 1) != c) {
+                sinRepetidas.append(c);
+            }
+        }
+        return sinRepetidas.length() == 0 ? palabra : sinRepetidas.toString();
+    }
+
+    // Cada palabra se compara con la más parecida del otro nombre (Monge-Elkan) y se promedia en ambos sentidos,
+    // así una palabra mal escrita no desordena la comparación del resto
+    private static double similitudNombre(String a, String b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0.0;
+        }
+        String[] palabrasA = a.split(" ");
+        String[] palabrasB = b.split(" ");
+        return (mejoresCoincidencias(palabrasA, palabrasB) + mejoresCoincidencias(palabrasB, palabrasA)) / 2;
+    }
+
+    private static double mejoresCoincidencias(String[] origen, String[] destino) {
+        double suma = 0;
+        for (String palabra : origen) {
+            double mejor = 0;
+            for (String otra : destino) {
+                mejor = Math.max(mejor, jaroWinkler(palabra, otra));
+            }
+            suma += mejor;
+        }
+        return suma / origen.length;
+    }
+
+    private static double jaroWinkler(String s1, String s2) {
+        if (s1.equals(s2)) {
+            return 1.0;
+        }
+        if (s1.isEmpty() || s2.isEmpty()) {
+            return 0.0;
+        }
+        int rango = Math.max(0, Math.max(s1.length(), s2.length()) / 2 - 1);
+        boolean[] coincide1 = new boolean[s1.length()];
+        boolean[] coincide2 = new boolean[s2.length()];
+        int coincidencias = 0;
+        for (int i = 0; i < s1.length(); i++) {
+            int inicio = Math.max(0, i - rango);
+            int fin = Math.min(i + rango + 1, s2.length());
+            for (int j = inicio; j < fin; j++) {
+                if (!coincide2[j] && s1.charAt(i) == s2.charAt(j)) {
+                    coincide1[i] = true;
+                    coincide2[j] = true;
+                    coincidencias++;
+                    break;
+                }
+            }
+        }
+        if (coincidencias == 0) {
+            return 0.0;
+        }
+        int transposiciones = 0;
+        for (int i = 0, k = 0; i < s1.length(); i++) {
+            if (coincide1[i]) {
+                while (!coincide2[k]) {
+                    k++;
+                }
+                if (s1.charAt(i) != s2.charAt(k)) {
+                    transposiciones++;
+                }
+                k++;
+            }
+        }
+        double m = coincidencias;
+        double jaro = (m / s1.length() + m / s2.length() + (m - transposiciones / 2.0) / m) / 3.0;
+        int prefijo = 0;
+        while (prefijo < Math.min(4, Math.min(s1.length(), s2.length())) && s1.charAt(prefijo) == s2.charAt(prefijo)) {
+            prefijo++;
+        }
+        return jaro + prefijo * 0.1 * (1 - jaro);
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        return date == null ? null : date.toLocalDate();
+    }
+
+    private UserSummaryDTO toSummary(User u) {
+        return UserSummaryDTO.builder()
+                .id(u.getId())
+                .nombre(u.getNombre())
+                .fechaNacimiento(u.getFechaNacimiento())
+                .fechaFallecimiento(u.getFechaFallecimiento())
+                .email(u.getEmail())
+                .confirmationStatus(u.getConfirmationStatus())
+                .build();
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        escaneos.shutdownNow();
+    }
+}
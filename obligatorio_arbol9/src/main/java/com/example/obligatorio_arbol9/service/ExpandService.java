@@ -0,0 +1,137 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.dto.ExpandNodeDTO;
+import com.example.obligatorio_arbol9.dto.ExpandRequest;
+import com.example.obligatorio_arbol9.dto.ExpandResponseDTO;
+import com.example.obligatorio_arbol9.entity.User;
+import com.example.obligatorio_arbol9.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Expansión bajo demanda: devuelve sólo la siguiente capa de un nodo en una dirección,
+// paginada con un cursor sobre los IDs ordenados de los vecinos.
+@Service
+public class ExpandService {
+
+    private static final int LIMITE_POR_DEFECTO = 50;
+    private static final int LIMITE_MAXIMO = 500;
+
+    @Autowired
+    private FamilyGraphService familyGraphService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    public ExpandResponseDTO expand(Long userId, String direction, String cursor, Integer limit) {
+        return expandir(List.of(userId), direction, Map.of(userId, desde(cursor)), limit).get(0);
+    }
+
+    // Expande varios nodos de la frontera con una única consulta a la base; cada nodo sigue desde su propio cursor
+    public List<ExpandResponseDTO> expandAll(List<Long> ids, String direction, Map<Long, String> cursors, Integer limit) {
+        if (ids.size() > ExpandRequest.MAXIMO_IDS) {
+            throw new RuntimeException("Se pueden expandir como máximo " + ExpandRequest.MAXIMO_IDS + " nodos por llamada");
+        }
+        Map<Long, Long> desdePorId = new HashMap<>();
+        if (cursors != null) {
+            cursors.forEach((id, cursor) -> desdePorId.put(id, desde(cursor)));
+        }
+        return expandir(ids, direction, desdePorId, limit);
+    }
+
+    private List<ExpandResponseDTO> expandir(List<Long> ids, String direction, Map<Long, Long> desdePorId, Integer limit) {
+        Function<FamilyGraph.Vecinos, long[]> relacion = relacion(direction);
+        int tamanio = limit == null ? LIMITE_POR_DEFECTO : Math.max(1, Math.min(limit, LIMITE_MAXIMO));
+        FamilyGraph graph = familyGraphService.getGraph();
+
+        // Los que no están en el grafo en memoria se comprueban todos juntos en la base
+        Set<Long> fueraDelGrafo = ids.stream()
+                .filter(id -> !graph.contiene(id))
+                .collect(Collectors.toSet());
+        if (!fueraDelGrafo.isEmpty() && userRepository.findAllById(fueraDelGrafo).size() < fueraDelGrafo.size()) {
+            throw new RuntimeException("Usuario no encontrado");
+        }
+
+        Map<Long, long[]> paginas = new LinkedHashMap<>();
+        Map<Long, long[]> todos = new HashMap<>();
+        Set<Long> aCargar = new HashSet<>();
+        for (Long id : ids) {
+            long[] vecinos = relacion.apply(graph.vecinos(id));
+            // Los vecinos están ordenados: la página empieza en el primer ID mayor al cursor
+            int inicio = Arrays.binarySearch(vecinos, desdePorId.getOrDefault(id, Long.MIN_VALUE));
+            inicio = inicio >= 0 ? inicio + 1 : -inicio - 1;
+            long[] pagina = Arrays.copyOfRange(vecinos, inicio, Math.min(vecinos.length, inicio + tamanio));
+            paginas.put(id, pagina);
+            todos.put(id, vecinos);
+            for (long vecino : pagina) {
+                aCargar.add(vecino);
+            }
+        }
+
+        Map<Long, User> usuarios = userRepository.findAllById(aCargar).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+
+        List<ExpandResponseDTO> respuestas = new ArrayList<>();
+        for (Map.Entry<Long, long[]> entry : paginas.entrySet()) {
+            long[] pagina = entry.getValue();
+            long[] vecinos = todos.get(entry.getKey());
+            boolean hasMore = pagina.length > 0 && pagina[pagina.length - 1] < vecinos[vecinos.length - 1];
+
+            respuestas.add(ExpandResponseDTO.builder()
+                    .id(entry.getKey())
+                    .direction(direction.toLowerCase())
+                    .total(vecinos.length)
+                    .nodos(Arrays.stream(pagina)
+                            .mapToObj(usuarios::get)
+                            .filter(Objects::nonNull)
+                            .map(user -> toNode(user, graph.vecinos(user.getId())))
+                            .collect(Collectors.toList()))
+                    .hasMore(hasMore)
+                    .nextCursor(hasMore ? String.valueOf(pagina[pagina.length - 1]) : null)
+                    .build());
+        }
+        return respuestas;
+    }
+
+    private Function<FamilyGraph.Vecinos, long[]> relacion(String direction) {
+        if (direction == null) {
+            throw new RuntimeException("Dirección inválida");
+        }
+        return switch (direction.toLowerCase()) {
+            case "antecesor" -> FamilyGraph.Vecinos::padres;
+            case "sucesor" -> FamilyGraph.Vecinos::hijos;
+            case "conyuge" -> FamilyGraph.Vecinos::conyuges;
+            default -> throw new RuntimeException("Dirección inválida");
+        };
+    }
+
+    private long desde(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return Long.parseLong(cursor);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Cursor inválido");
+        }
+    }
+
+    private ExpandNodeDTO toNode(User user, FamilyGraph.Vecinos vecinos) {
+        return ExpandNodeDTO.builder()
+                .id(user.getId())
+                .nombre(user.getNombre())
+                .fechaNacimiento(user.getFechaNacimiento())
+                .fechaFallecimiento(user.getFechaFallecimiento())
+                .email(user.getEmail())
+                .confirmationStatus(user.getConfirmationStatus())
+                .cantidadPadres(vecinos.padres().length)
+                .cantidadHijos(vecinos.hijos().length)
+                .cantidadConyuges(vecinos.conyuges().length)
+                .tieneAntecesores(vecinos.padres().length > 0)
+                .tieneSucesores(vecinos.hijos().length > 0)
+                .build();
+    }
+}
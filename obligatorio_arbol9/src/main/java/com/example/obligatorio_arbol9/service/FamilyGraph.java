@@ -0,0 +1,249 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.entity.GraphChange;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Representación en memoria de las relaciones (tabla relationship: padres, cónyuges y confirmaciones).
+// Cada nodo guarda arreglos ordenados e inmutables de IDs, así las lecturas no necesitan bloqueo
+// y cada cambio reemplaza el nodo completo. Las confirmaciones se guardan en los dos sentidos
+// (confirmadoPor y confirmo) para poder quitar un nodo sin recorrer el grafo entero.
+public class FamilyGraph {
+
+    private static final long[] VACIO = new long[0];
+
+    public record Vecinos(long[] padres, long[] hijos, long[] conyuges, long[] confirmadoPor, long[] confirmo) {
+        static final Vecinos NINGUNO = new Vecinos(VACIO, VACIO, VACIO, VACIO, VACIO);
+
+        public int grado() {
+            return padres.length + hijos.length + conyuges.length;
+        }
+    }
+
+    private final ConcurrentHashMap<Long, Vecinos> nodos;
+
+    public FamilyGraph() {
+        this.nodos = new ConcurrentHashMap<>();
+    }
+
+    public FamilyGraph(Map<Long, Vecinos> nodos) {
+        this.nodos = new ConcurrentHashMap<>(nodos);
+    }
+
+    public boolean contiene(long id) {
+        return nodos.containsKey(id);
+    }
+
+    public Vecinos vecinos(long id) {
+        return nodos.getOrDefault(id, Vecinos.NINGUNO);
+    }
+
+    public int cantidadNodos() {
+        return nodos.size();
+    }
+
+    public Map<Long, Vecinos> nodos() {
+        return nodos;
+    }
+
+    // Recorrido en anchura por padres, hijos y cónyuges hasta la profundidad indicada (incluye el origen)
+    public Set<Long> alcanzables(long origen, int profundidad) {
+        return alcanzables(List.of(origen), profundidad);
+    }
+
+    // Igual que el anterior pero desde varios orígenes a la vez; cada nodo se visita una sola vez
+    public Set<Long> alcanzables(Collection<Long> origenes, int profundidad) {
+        return alcanzables(origenes, profundidad, Set.of());
+    }
+
+    // Recorrido que no pasa por los nodos excluidos (por ejemplo uno que se está por eliminar)
+    public Set<Long> alcanzables(Collection<Long> origenes, int profundidad, Set<Long> excluidos) {
+        Set<Long> visitados = new LinkedHashSet<>(excluidos);
+        List<Long> frontera = new ArrayList<>();
+        for (Long origen : origenes) {
+            if (visitados.add(origen)) {
+                frontera.add(origen);
+            }
+        }
+
+        for (int nivel = 0; nivel < profundidad && !frontera.isEmpty(); nivel++) {
+            List<Long> siguiente = new ArrayList<>();
+            for (Long id : frontera) {
+                Vecinos v = vecinos(id);
+                for (long[] relacion : List.of(v.padres(), v.hijos(), v.conyuges())) {
+                    for (long vecino : relacion) {
+                        if (visitados.add(vecino)) {
+                            siguiente.add(vecino);
+                        }
+                    }
+                }
+            }
+            frontera = siguiente;
+        }
+        visitados.removeAll(excluidos);
+        return visitados;
+    }
+
+    // Indica si posibleAncestro aparece subiendo por los padres desde id
+    public boolean esAncestro(long posibleAncestro, long id) {
+        Set<Long> visitados = new HashSet<>();
+        Deque<Long> pendientes = new ArrayDeque<>();
+        pendientes.add(id);
+        while (!pendientes.isEmpty()) {
+            for (long padre : vecinos(pendientes.poll()).padres()) {
+                if (padre == posibleAncestro) {
+                    return true;
+                }
+                if (visitados.add(padre)) {
+                    pendientes.add(padre);
+                }
+            }
+        }
+        return false;
+    }
+
+    // Personas y generaciones alcanzadas subiendo por los padres (ascendente) o bajando por los hijos
+    public record Linaje(int personas, int generaciones) {
+    }
+
+    public Linaje linaje(long id, boolean ascendente) {
+        Set<Long> visitados = new HashSet<>();
+        visitados.add(id);
+        List<Long> frontera = List.of(id);
+        int generaciones = 0;
+        while (true) {
+            List<Long> siguiente = new ArrayList<>();
+            for (Long actual : frontera) {
+                Vecinos v = vecinos(actual);
+                for (long otro : ascendente ? v.padres() : v.hijos()) {
+                    if (visitados.add(otro)) {
+                        siguiente.add(otro);
+                    }
+                }
+            }
+            if (siguiente.isEmpty()) {
+                return new Linaje(visitados.size() - 1, generaciones);
+            }
+            generaciones++;
+            frontera = siguiente;
+        }
+    }
+
+    // Aplica un cambio del registro; todas las operaciones son idempotentes
+    public void aplicar(GraphChange cambio) {
+        long desde = cambio.getDesdeId();
+        Long hasta = cambio.getHastaId();
+        switch (cambio.getTipo()) {
+            case NODO_AGREGADO -> nodos.putIfAbsent(desde, Vecinos.NINGUNO);
+            case NODO_ELIMINADO -> eliminarNodo(desde);
+            case PADRE_AGREGADO -> {
+                nodos.compute(desde, (id, v) -> conPadres(v, agregar(base(v).padres(), hasta)));
+                nodos.compute(hasta, (id, v) -> conHijos(v, agregar(base(v).hijos(), desde)));
+            }
+            case PADRE_QUITADO -> {
+                nodos.computeIfPresent(desde, (id, v) -> conPadres(v, quitar(v.padres(), hasta)));
+                nodos.computeIfPresent(hasta, (id, v) -> conHijos(v, quitar(v.hijos(), desde)));
+            }
+            case CONYUGE_AGREGADO -> {
+                nodos.compute(desde, (id, v) -> conConyuges(v, agregar(base(v).conyuges(), hasta)));
+                nodos.compute(hasta, (id, v) -> conConyuges(v, agregar(base(v).conyuges(), desde)));
+            }
+            case CONYUGE_QUITADO -> {
+                nodos.computeIfPresent(desde, (id, v) -> conConyuges(v, quitar(v.conyuges(), hasta)));
+                nodos.computeIfPresent(hasta, (id, v) -> conConyuges(v, quitar(v.conyuges(), desde)));
+            }
+            case CONFIRMACION_AGREGADA -> {
+                nodos.compute(desde, (id, v) -> conConfirmadoPor(v, agregar(base(v).confirmadoPor(), hasta)));
+                nodos.compute(hasta, (id, v) -> conConfirmo(v, agregar(base(v).confirmo(), desde)));
+            }
+        }
+    }
+
+    private void eliminarNodo(long id) {
+        Vecinos v = nodos.remove(id);
+        if (v == null) {
+            return;
+        }
+        for (long padre : v.padres()) {
+            nodos.computeIfPresent(padre, (k, p) -> conHijos(p, quitar(p.hijos(), id)));
+        }
+        for (long hijo : v.hijos()) {
+            nodos.computeIfPresent(hijo, (k, h) -> conPadres(h, quitar(h.padres(), id)));
+        }
+        for (long conyuge : v.conyuges()) {
+            nodos.computeIfPresent(conyuge, (k, c) -> conConyuges(c, quitar(c.conyuges(), id)));
+        }
+        for (long confirmador : v.confirmadoPor()) {
+            nodos.computeIfPresent(confirmador, (k, c) -> conConfirmo(c, quitar(c.confirmo(), id)));
+        }
+        for (long confirmado : v.confirmo()) {
+            nodos.computeIfPresent(confirmado, (k, c) -> conConfirmadoPor(c, quitar(c.confirmadoPor(), id)));
+        }
+    }
+
+    // Convierte una colección de IDs en el arreglo ordenado que usa el grafo
+    public static long[] ordenar(Collection<Long> ids) {
+        long[] arreglo = ids.stream().mapToLong(Long::longValue).distinct().toArray();
+        Arrays.sort(arreglo);
+        return arreglo;
+    }
+
+    private static Vecinos base(Vecinos v) {
+        return v == null ? Vecinos.NINGUNO : v;
+    }
+
+    private static Vecinos conPadres(Vecinos v, long[] padres) {
+        v = base(v);
+        return new Vecinos(padres, v.hijos(), v.conyuges(), v.confirmadoPor(), v.confirmo());
+    }
+
+    private static Vecinos conHijos(Vecinos v, long[] hijos) {
+        v = base(v);
+        return new Vecinos(v.padres(), hijos, v.conyuges(), v.confirmadoPor(), v.confirmo());
+    }
+
+    private static Vecinos conConyuges(Vecinos v, long[] conyuges) {
+        v = base(v);
+        return new Vecinos(v.padres(), v.hijos(), conyuges, v.confirmadoPor(), v.confirmo());
+    }
+
+    private static Vecinos conConfirmadoPor(Vecinos v, long[] confirmadoPor) {
+        v = base(v);
+        return new Vecinos(v.padres(), v.hijos(), v.conyuges(), confirmadoPor, v.confirmo());
+    }
+
+    private static Vecinos conConfirmo(Vecinos v, long[] confirmo) {
+        v = base(v);
+        return new Vecinos(v.padres(), v.hijos(), v.conyuges(), v.confirmadoPor(), confirmo);
+    }
+
+    // Si un ID está en una lista de vecinos (ordenada)
+    public static boolean incluye(long[] ids, long id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    private static long[] agregar(long[] ids, long id) {
+        int pos = Arrays.binarySearch(ids, id);
+        if (pos >= 0) {
+            return ids;
+        }
+        int insercion = -pos - 1;
+        long[] nuevo = new long[ids.length + 1];
+        System.arraycopy(ids, 0, nuevo, 0, insercion);
+        nuevo[insercion] = id;
+        System.arraycopy(ids, insercion, nuevo, insercion + 1, ids.length - insercion);
+        return nuevo;
+    }
+
+    private static long[] quitar(long[] ids, long id) {
+        int pos = Arrays.binarySearch(ids, id);
+        if (pos < 0) {
+            return ids;
+        }
+        long[] nuevo = new long[ids.length - 1];
+        System.arraycopy(ids, 0, nuevo, 0, pos);
+        System.arraycopy(ids, pos + 1, nuevo, pos, ids.length - pos - 1);
+        return nuevo;
+    }
+}
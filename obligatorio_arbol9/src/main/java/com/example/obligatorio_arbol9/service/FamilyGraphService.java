@@ -0,0 +1,395 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.entity.GraphChange;
+import com.example.obligatorio_arbol9.entity.GraphChangeType;
+import com.example.obligatorio_arbol9.entity.RelationshipType;
+import com.example.obligatorio_arbol9.repository.GraphChangeRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Mantiene el grafo de relaciones en memoria.
+// Al arrancar lo carga desde un snapshot binario mapeado en memoria y reaplica el registro de cambios;
+// si no hay snapshot, lo reconstruye desde las tablas de relaciones.
+// El registro conserva exactamente los cambios que todavía no entraron en un snapshot, sin importar
+// su seq: una transacción que confirma tarde con un seq viejo no se pierde al reaplicar.
+@Service
+@DependsOn("relationshipMigration")
+public class FamilyGraphService {
+
+    private static final Logger log = LoggerFactory.getLogger(FamilyGraphService.class);
+
+    private static final int MAGIC = 0x46475331; // "FGS1"
+    private static final int FORMATO = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+
+    private static final int LOTE_BORRADO = 1000;
+    // Cambios recientes que se recuerdan para saber qué nodos tocó cada versión
+    private static final int CAMBIOS_RECIENTES = 4096;
+
+    @Autowired
+    private GraphChangeRepository graphChangeRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${graph.snapshot.path:data/graph.snapshot}")
+    private String snapshotPath;
+
+    private volatile FamilyGraph graph = new FamilyGraph();
+
+    // Cambios aplicados al grafo en memoria que todavía no se borraron del registro
+    private final Set<Long> seqsAplicados = ConcurrentHashMap.newKeySet();
+
+    // Versión del grafo en memoria: sube con cada cambio, después de aplicarlo (en el mismo afterCommit).
+    // Quien lee la versión antes de recorrer el grafo nunca asocia datos viejos a una versión nueva.
+    private final Object versiones = new Object();
+    private long version;
+    private final ArrayDeque<long[]> recientes = new ArrayDeque<>(); // {versión, desdeId, hastaId}
+
+    // Clave del mayor seq registrado en la transacción actual
+    private final Object ultimoSeqDeLaTransaccion = new Object();
+
+    @PostConstruct
+    public void inicializar() {
+        long inicio = System.currentTimeMillis();
+        Path path = Path.of(snapshotPath);
+        FamilyGraph cargado = null;
+        if (Files.exists(path)) {
+            try {
+                cargado = cargarSnapshot(path);
+            } catch (IOException | RuntimeException e) {
+                log.warn("No se pudo leer el snapshot del grafo {}, se reconstruye desde la base: {}", path, e.getMessage());
+            }
+        }
+        if (cargado == null) {
+            cargado = reconstruirDesdeTablas();
+        }
+        graph = cargado;
+
+        // Todo lo que queda en el registro se reaplica en orden de seq. Los cambios que ya estaban en
+        // el snapshot (si se cortó antes de borrarlos) no molestan: para una misma arista el orden de
+        // seq es el de confirmación, así que gana siempre el último.
+        List<GraphChange> cambios = graphChangeRepository.findAllByOrderBySeqAsc();
+        for (GraphChange cambio : cambios) {
+            aplicar(cambio);
+        }
+        log.info("Grafo de relaciones listo: {} nodos, {} cambios reaplicados en {} ms",
+                graph.cantidadNodos(), cambios.size(), System.currentTimeMillis() - inicio);
+    }
+
+    public FamilyGraph getGraph() {
+        return graph;
+    }
+
+    // Registra un cambio en la transacción actual; se aplica al grafo en memoria recién al confirmarla
+    public void registrar(GraphChangeType tipo, Long desdeId, Long hastaId) {
+        GraphChange cambio = graphChangeRepository.save(GraphChange.builder()
+                .tipo(tipo)
+                .desdeId(desdeId)
+                .hastaId(hastaId)
+                .build());
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            recordarEnLaTransaccion(cambio.getSeq());
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    aplicar(cambio);
+                }
+            });
+        } else {
+            aplicar(cambio);
+        }
+    }
+
+    private void recordarEnLaTransaccion(long seq) {
+        long[] ultimo = (long[]) TransactionSynchronizationManager.getResource(ultimoSeqDeLaTransaccion);
+        if (ultimo == null) {
+            ultimo = new long[1];
+            TransactionSynchronizationManager.bindResource(ultimoSeqDeLaTransaccion, ultimo);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ultimoSeqDeLaTransaccion);
+                }
+            });
+        }
+        ultimo[0] = Math.max(ultimo[0], seq);
+    }
+
+    // Mayor seq registrado hasta ahora en la transacción actual; null si no registró cambios
+    public Long ultimoSeqRegistrado() {
+        long[] ultimo = (long[]) TransactionSynchronizationManager.getResource(ultimoSeqDeLaTransaccion);
+        return ultimo == null ? null : ultimo[0];
+    }
+
+    // Si un cambio confirmado ya está en el grafo en memoria. Uno que no figura entre los aplicados y
+    // sigue en el registro confirmó pero todavía no pasó por afterCommit; si ya no está en el registro,
+    // entró en un snapshot y se recortó.
+    public boolean aplicado(long seq) {
+        return seqsAplicados.contains(seq) || !graphChangeRepository.existsById(seq);
+    }
+
+    private void aplicar(GraphChange cambio) {
+        graph.aplicar(cambio);
+        seqsAplicados.add(cambio.getSeq());
+        synchronized (versiones) {
+            version++;
+            recientes.addLast(new long[]{version, cambio.getDesdeId(),
+                    cambio.getHastaId() == null ? cambio.getDesdeId() : cambio.getHastaId()});
+            if (recientes.size() > CAMBIOS_RECIENTES) {
+                recientes.removeFirst();
+            }
+        }
+    }
+
+    public long getVersion() {
+        synchronized (versiones) {
+            return version;
+        }
+    }
+
+    // Nodos tocados por los cambios posteriores a la versión dada; null si esos cambios ya no se recuerdan
+    public Set<Long> tocadosDesde(long desdeVersion) {
+        synchronized (versiones) {
+            if (desdeVersion >= version) {
+                return Set.of();
+            }
+            if (recientes.isEmpty() || recientes.peekFirst()[0] > desdeVersion + 1) {
+                return null;
+            }
+            Set<Long> tocados = new HashSet<>();
+            for (Iterator<long[]> it = recientes.descendingIterator(); it.hasNext(); ) {
+                long[] cambio = it.next();
+                if (cambio[0] <= desdeVersion) {
+                    break;
+                }
+                tocados.add(cambio[1]);
+                tocados.add(cambio[2]);
+            }
+            return tocados;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${graph.snapshot.interval-ms:600000}",
+            initialDelayString = "${graph.snapshot.interval-ms:600000}")
+    public void guardarSnapshotPeriodico() {
+        try {
+            guardarYRecortarRegistro();
+        } catch (IOException | RuntimeException e) {
+            log.warn("No se pudo guardar el snapshot del grafo: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void guardarAlCerrar() {
+        try {
+            guardarYRecortarRegistro();
+        } catch (IOException | RuntimeException e) {
+            log.warn("No se pudo guardar el snapshot del grafo al cerrar: {}", e.getMessage());
+        }
+    }
+
+    // Guarda el snapshot y borra del registro exactamente los cambios que entraron en él.
+    // Se borran de menor a mayor seq: si el borrado se corta, lo que queda son los cambios más nuevos
+    // y reaplicarlos no deshace nada.
+    private void guardarYRecortarRegistro() throws IOException {
+        List<Long> incluidos = new ArrayList<>(guardarSnapshot());
+        Collections.sort(incluidos);
+        for (int i = 0; i < incluidos.size(); i += LOTE_BORRADO) {
+            List<Long> lote = incluidos.subList(i, Math.min(i + LOTE_BORRADO, incluidos.size()));
+            graphChangeRepository.deleteAllByIdInBatch(lote);
+            seqsAplicados.removeAll(lote);
+        }
+    }
+
+    // Formato: cabecera, tabla de IDs ordenada y, por cada relación, offsets (n + 1) y destinos como índices.
+    // Devuelve los seq de los cambios incluidos.
+    public synchronized Set<Long> guardarSnapshot() throws IOException {
+        // Primero los cambios ya aplicados y después la copia: uno que se aplique en el medio puede quedar
+        // a medias en la copia, pero no se cuenta como incluido y se reaplica al arrancar
+        Set<Long> incluidos = new HashSet<>(seqsAplicados);
+        long seq = incluidos.stream().mapToLong(Long::longValue).max().orElse(0);
+        Map<Long, FamilyGraph.Vecinos> copia = new HashMap<>(graph.nodos());
+
+        long[] ids = FamilyGraph.ordenar(copia.keySet());
+        int n = ids.length;
+        List<Function<FamilyGraph.Vecinos, long[]>> relaciones = relaciones();
+
+        List<int[]> destinosPorRelacion = new ArrayList<>();
+        List<int[]> offsetsPorRelacion = new ArrayList<>();
+        long bytes = HEADER_BYTES + 8L * n;
+        for (Function<FamilyGraph.Vecinos, long[]> relacion : relaciones) {
+            int[] offsets = new int[n + 1];
+            int[] destinos = new int[contarAristas(copia, ids, relacion)];
+            int m = 0;
+            for (int i = 0; i < n; i++) {
+                offsets[i] = m;
+                for (long vecino : relacion.apply(copia.get(ids[i]))) {
+                    int indice = Arrays.binarySearch(ids, vecino);
+                    if (indice >= 0) {
+                        destinos[m++] = indice;
+                    }
+                }
+            }
+            offsets[n] = m;
+            offsetsPorRelacion.add(offsets);
+            destinosPorRelacion.add(m == destinos.length ? destinos : Arrays.copyOf(destinos, m));
+            bytes += 4L * (n + 1) + 4L * m;
+        }
+
+        Path path = Path.of(snapshotPath);
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            buffer.putInt(MAGIC).putInt(FORMATO).putLong(seq).putInt(n);
+            buffer.asLongBuffer().put(ids);
+            buffer.position(buffer.position() + 8 * n);
+            for (int r = 0; r < relaciones.size(); r++) {
+                putInts(buffer, offsetsPorRelacion.get(r));
+                putInts(buffer, destinosPorRelacion.get(r));
+            }
+            buffer.force();
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Snapshot del grafo guardado: {} nodos, {} cambios nuevos hasta el {}", n, incluidos.size(), seq);
+        return incluidos;
+    }
+
+    private FamilyGraph cargarSnapshot(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            validarCabecera(buffer);
+            buffer.getLong(); // mayor seq incluido, sólo informativo
+            int n = buffer.getInt();
+
+            long[] ids = new long[n];
+            buffer.asLongBuffer().get(ids);
+            buffer.position(buffer.position() + 8 * n);
+
+            int cantidadRelaciones = relaciones().size();
+            long[][][] vecinos = new long[cantidadRelaciones][n][];
+            for (int r = 0; r < cantidadRelaciones; r++) {
+                int[] offsets = getInts(buffer, n + 1);
+                int[] destinos = getInts(buffer, offsets[n]);
+                for (int i = 0; i < n; i++) {
+                    long[] relacion = new long[offsets[i + 1] - offsets[i]];
+                    for (int k = 0; k < relacion.length; k++) {
+                        relacion[k] = ids[destinos[offsets[i] + k]];
+                    }
+                    vecinos[r][i] = relacion;
+                }
+            }
+
+            Map<Long, FamilyGraph.Vecinos> nodos = new HashMap<>(Math.max(16, (int) (n / 0.75f) + 1));
+            for (int i = 0; i < n; i++) {
+                nodos.put(ids[i], new FamilyGraph.Vecinos(vecinos[0][i], vecinos[1][i], vecinos[2][i], vecinos[3][i],
+                        vecinos[4][i]));
+            }
+            return new FamilyGraph(nodos);
+        }
+    }
+
+    // Reconstrucción completa desde MySQL, sólo cuando no hay un snapshot válido
+    private FamilyGraph reconstruirDesdeTablas() {
+        Map<Long, List<Long>> padres = new HashMap<>();
+        Map<Long, List<Long>> hijos = new HashMap<>();
+        Map<Long, List<Long>> conyuges = new HashMap<>();
+        Map<Long, List<Long>> confirmadoPor = new HashMap<>();
+        Map<Long, List<Long>> confirmo = new HashMap<>();
+        Set<Long> ids = new HashSet<>();
+
+        jdbcTemplate.query("SELECT id FROM users", rs -> {
+            ids.add(rs.getLong(1));
+        });
+        // Una sola lectura de la tabla de relaciones
+        jdbcTemplate.query("SELECT from_id, to_id, type FROM relationship", rs -> {
+            long desde = rs.getLong(1);
+            long hasta = rs.getLong(2);
+            switch (RelationshipType.valueOf(rs.getString(3))) {
+                case PADRE -> {
+                    padres.computeIfAbsent(desde, k -> new ArrayList<>()).add(hasta);
+                    hijos.computeIfAbsent(hasta, k -> new ArrayList<>()).add(desde);
+                }
+                case CONYUGE -> {
+                    conyuges.computeIfAbsent(desde, k -> new ArrayList<>()).add(hasta);
+                    conyuges.computeIfAbsent(hasta, k -> new ArrayList<>()).add(desde);
+                }
+                case CONFIRMACION -> {
+                    confirmadoPor.computeIfAbsent(desde, k -> new ArrayList<>()).add(hasta);
+                    confirmo.computeIfAbsent(hasta, k -> new ArrayList<>()).add(desde);
+                }
+            }
+        });
+
+        Map<Long, FamilyGraph.Vecinos> nodos = new HashMap<>();
+        for (Long id : ids) {
+            nodos.put(id, new FamilyGraph.Vecinos(
+                    FamilyGraph.ordenar(padres.getOrDefault(id, List.of())),
+                    FamilyGraph.ordenar(hijos.getOrDefault(id, List.of())),
+                    FamilyGraph.ordenar(conyuges.getOrDefault(id, List.of())),
+                    FamilyGraph.ordenar(confirmadoPor.getOrDefault(id, List.of())),
+                    FamilyGraph.ordenar(confirmo.getOrDefault(id, List.of()))));
+        }
+        return new FamilyGraph(nodos);
+    }
+
+    // Orden de las relaciones en el snapshot; debe coincidir con el constructor de Vecinos
+    private static List<Function<FamilyGraph.Vecinos, long[]>> relaciones() {
+        return List.of(FamilyGraph.Vecinos::padres, FamilyGraph.Vecinos::hijos,
+                FamilyGraph.Vecinos::conyuges, FamilyGraph.Vecinos::confirmadoPor, FamilyGraph.Vecinos::confirmo);
+    }
+
+    private static int contarAristas(Map<Long, FamilyGraph.Vecinos> nodos, long[] ids,
+                                     Function<FamilyGraph.Vecinos, long[]> relacion) {
+        int total = 0;
+        for (long id : ids) {
+            total += relacion.apply(nodos.get(id)).length;
+        }
+        return total;
+    }
+
+    private static void validarCabecera(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMATO) {
+            throw new IllegalStateException("Formato de snapshot desconocido");
+        }
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] valores) {
+        buffer.asIntBuffer().put(valores);
+        buffer.position(buffer.position() + 4 * valores.length);
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int cantidad) {
+        int[] valores = new int[cantidad];
+        buffer.asIntBuffer().get(valores);
+        buffer.position(buffer.position() + 4 * cantidad);
+        return valores;
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.dto.FamilyStatsDTO;
+import com.example.obligatorio_arbol9.entity.ConfirmationStatus;
+import com.example.obligatorio_arbol9.entity.FamilyStats;
+import com.example.obligatorio_arbol9.entity.User;
+import com.example.obligatorio_arbol9.repository.FamilyStatsRepository;
+import com.example.obligatorio_arbol9.repository.UserRepository;
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.*;
+
+// Mantiene los agregados de cada familia en la misma transacción que la mutación,
+// de modo que leer las estadísticas sea una única búsqueda por id.
+@Service
+public class FamilyStatsService {
+
+    @Autowired
+    private FamilyStatsRepository familyStatsRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private FamilyGraphService familyGraphService;
+
+    @Autowired
+    private TreeEventService treeEventService;
+
+    // Aporte de un miembro a los agregados; se toma antes de modificarlo para poder restarlo
+    public record Aporte(LocalDate fechaNacimiento, LocalDate fechaFallecimiento, boolean confirmado) {
+        public static Aporte of(User user) {
+            return new Aporte(user.getFechaNacimiento(), user.getFechaFallecimiento(),
+                    user.getConfirmationStatus() == ConfirmationStatus.CONFIRMED);
+        }
+    }
+
+    // Crea la familia de un usuario recién registrado (debe estar guardado)
+    @Transactional
+    public void registrarNuevaFamilia(User user) {
+        FamilyStats stats = familyStatsRepository.save(new FamilyStats());
+        user.setFamiliaId(stats.getId());
+        aplicar(stats, Aporte.of(user), 1);
+    }
+
+    // Suma un nuevo miembro a la familia indicada
+    @Transactional
+    public void miembroAgregado(Long familiaId, User nuevo) {
+        nuevo.setFamiliaId(familiaId);
+        if (familiaId == null) {
+            return; // Familia aún no inicializada; se calculará completa en la primera lectura
+        }
+        FamilyStats stats = bloquear(familiaId);
+        aplicar(stats, Aporte.of(nuevo), 1);
+    }
+
+    // Reemplaza el aporte anterior de un miembro por el actual
+    @Transactional
+    public void miembroActualizado(User user, Aporte anterior) {
+        if (user.getFamiliaId() == null) {
+            return;
+        }
+        FamilyStats stats = bloquear(user.getFamiliaId());
+        aplicar(stats, anterior, -1);
+        aplicar(stats, Aporte.of(user), 1);
+    }
+
+    // Resta un miembro que va a ser eliminado junto con sus relaciones. Si su baja parte la familia,
+    // la parte más grande conserva la fila y cada una de las demás pasa a una familia nueva.
+    @Transactional
+    public void miembroEliminado(User user) {
+        miembroEliminado(user.getFamiliaId(), Aporte.of(user));
+        if (user.getFamiliaId() != null) {
+            separarPartes(user.getFamiliaId(), user.getId());
+        }
+    }
+
+    @Transactional
+    public void miembroEliminado(Long familiaId, Aporte aporte) {
+        if (familiaId == null) {
+            return;
+        }
+        FamilyStats stats = bloquear(familiaId);
+        aplicar(stats, aporte, -1);
+    }
+
+    // Une dos familias (por ejemplo al fusionar personas duplicadas): suma los agregados
+    // y reasigna los miembros con una única sentencia
+    @Transactional
+    public void fusionarFamilias(Long destinoId, Long origenId) {
+        if (destinoId == null || origenId == null || destinoId.equals(origenId)) {
+            return;
+        }
+        // Se bloquean siempre en el mismo orden para evitar deadlocks entre fusiones concurrentes
+        FamilyStats primera = bloquear(Math.min(destinoId, origenId));
+        FamilyStats segunda = bloquear(Math.max(destinoId, origenId));
+        FamilyStats destino = primera.getId().equals(destinoId) ? primera : segunda;
+        FamilyStats origen = destino == primera ? segunda : primera;
+
+        destino.setMiembros(destino.getMiembros() + origen.getMiembros());
+        destino.setVivos(destino.getVivos() + origen.getVivos());
+        destino.setFallecidos(destino.getFallecidos() + origen.getFallecidos());
+        destino.setConfirmados(destino.getConfirmados() + origen.getConfirmados());
+        destino.setSumaAniosVida(destino.getSumaAniosVida() + origen.getSumaAniosVida());
+        origen.getDistribucionLongevidad().forEach((decada, cantidad) ->
+                destino.getDistribucionLongevidad().merge(decada, cantidad, Long::sum));
+
+        userRepository.moveToFamily(origenId, destinoId);
+        familyStatsRepository.delete(origen);
+    }
+
+    // Las partes se calculan en el grafo en memoria sin pasar por el eliminado (todavía figura en él:
+    // el grafo se actualiza al confirmar). Sólo se recorren los miembros de las partes que se mudan.
+    private void separarPartes(Long familiaId, Long eliminadoId) {
+        FamilyGraph graph = familyGraphService.getGraph();
+        FamilyGraph.Vecinos vecinos = graph.vecinos(eliminadoId);
+        if (vecinos.padres().length + vecinos.hijos().length + vecinos.conyuges().length < 2) {
+            return; // Con un solo vecino la familia no se puede partir
+        }
+
+        Set<Long> excluidos = Set.of(eliminadoId);
+        Set<Long> cubiertos = new HashSet<>();
+        List<Set<Long>> partes = new ArrayList<>();
+        for (long[] relacion : List.of(vecinos.padres(), vecinos.hijos(), vecinos.conyuges())) {
+            for (long vecino : relacion) {
+                if (!cubiertos.contains(vecino)) {
+                    Set<Long> parte = graph.alcanzables(List.of(vecino), Integer.MAX_VALUE, excluidos);
+                    cubiertos.addAll(parte);
+                    partes.add(parte);
+                }
+            }
+        }
+        if (partes.size() < 2) {
+            return;
+        }
+
+        partes.sort(Comparator.comparingInt(Set::size));
+        FamilyStats stats = bloquear(familiaId);
+        for (Set<Long> parte : partes.subList(0, partes.size() - 1)) {
+            FamilyStats nueva = familyStatsRepository.save(new FamilyStats());
+            for (User miembro : userRepository.findAllById(parte)) {
+                if (familiaId.equals(miembro.getFamiliaId())) {
+                    Aporte aporte = Aporte.of(miembro);
+                    aplicar(stats, aporte, -1);
+                    aplicar(nueva, aporte, 1);
+                    miembro.setFamiliaId(nueva.getId());
+                }
+            }
+            treeEventService.separarFamilia(familiaId, nueva.getId(), parte);
+        }
+    }
+
+    // Obtener estadísticas de la familia del usuario. Ancestros, descendientes y generaciones son
+    // relativos a ese usuario y salen del grafo en memoria; el resto son agregados de toda la familia.
+    @Transactional
+    public FamilyStatsDTO getFamilyStats(Long userId) {
+        FamilyStats stats = statsDelUsuario(userId);
+        FamilyGraph graph = familyGraphService.getGraph();
+        FamilyGraph.Linaje arriba = graph.linaje(userId, true);
+        FamilyGraph.Linaje abajo = graph.linaje(userId, false);
+        return toDTO(stats, arriba, abajo);
+    }
+
+    @Transactional
+    public Long getFamiliaId(Long userId) {
+        return statsDelUsuario(userId).getId();
+    }
+
+    // Estadísticas de la familia del usuario; si todavía no tiene familia, se inicializa
+    private FamilyStats statsDelUsuario(Long userId) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+
+        return user.getFamiliaId() == null
+                ? inicializarFamilia(user)
+                : familyStatsRepository.findById(user.getFamiliaId())
+                        .orElseThrow(() -> new RuntimeException("Estadísticas de familia no encontradas"));
+    }
+
+    // Para datos anteriores a las estadísticas: crea la fila de la familia la primera vez que se lee.
+    // Antes de decidir se bloquean todos los miembros en orden de id; si dos lecturas concurrentes
+    // llegan a la misma familia, la segunda espera y encuentra la familia ya asignada.
+    private FamilyStats inicializarFamilia(User user) {
+        Set<Long> ids = familyGraphService.getGraph().alcanzables(user.getId(), Integer.MAX_VALUE);
+
+        Long familiaExistente = null;
+        List<Long> sinFamilia = new ArrayList<>();
+        for (Object[] fila : userRepository.lockFamilias(ids)) {
+            Long id = ((Number) fila[0]).longValue();
+            if (fila[1] == null) {
+                sinFamilia.add(id);
+            } else if (familiaExistente == null) {
+                familiaExistente = ((Number) fila[1]).longValue();
+            }
+        }
+
+        // Los miembros sin familia se suman a la ya creada, o a una nueva si no hay ninguna
+        FamilyStats stats = familiaExistente != null
+                ? bloquear(familiaExistente)
+                : familyStatsRepository.save(new FamilyStats());
+        for (User miembro : userRepository.findAllById(sinFamilia)) {
+            miembro.setFamiliaId(stats.getId());
+            aplicar(stats, Aporte.of(miembro), 1);
+        }
+        return stats;
+    }
+
+    private FamilyStats bloquear(Long familiaId) {
+        return familyStatsRepository.findByIdForUpdate(familiaId)
+                .orElseThrow(() -> new RuntimeException("Estadísticas de familia no encontradas"));
+    }
+
+    private void aplicar(FamilyStats stats, Aporte aporte, int signo) {
+        stats.setMiembros(stats.getMiembros() + signo);
+
+        if (aporte.fechaFallecimiento() == null) {
+            stats.setVivos(stats.getVivos() + signo);
+        } else {
+            stats.setFallecidos(stats.getFallecidos() + signo);
+            // Una fecha de fallecimiento anterior a la de nacimiento es un error de carga: no suma años
+            if (aporte.fechaNacimiento() != null && !aporte.fechaFallecimiento().isBefore(aporte.fechaNacimiento())) {
+                int anios = Period.between(aporte.fechaNacimiento(), aporte.fechaFallecimiento()).getYears();
+                stats.setSumaAniosVida(stats.getSumaAniosVida() + (long) signo * anios);
+                stats.getDistribucionLongevidad().merge((anios / 10) * 10, (long) signo, Long::sum);
+                stats.getDistribucionLongevidad().values().removeIf(cantidad -> cantidad <= 0);
+            }
+        }
+
+        if (aporte.confirmado()) {
+            stats.setConfirmados(stats.getConfirmados() + signo);
+        }
+    }
+
+    private FamilyStatsDTO toDTO(FamilyStats stats, FamilyGraph.Linaje arriba, FamilyGraph.Linaje abajo) {
+        return FamilyStatsDTO.builder()
+                .familiaId(stats.getId())
+                .miembros(stats.getMiembros())
+                .ancestros(arriba.personas())
+                .descendientes(abajo.personas())
+                .generaciones(arriba.generaciones() + abajo.generaciones() + 1)
+                .vivos(stats.getVivos())
+                .fallecidos(stats.getFallecidos())
+                .promedioAniosVida(stats.getFallecidos() > 0
+                        ? (double) stats.getSumaAniosVida() / stats.getFallecidos()
+                        : null)
+                .distribucionLongevidad(new TreeMap<>(stats.getDistribucionLongevidad()))
+                .confirmados(stats.getConfirmados())
+                .coberturaConfirmacion(stats.getMiembros() > 0
+                        ? (double) stats.getConfirmados() / stats.getMiembros()
+                        : 0.0)
+                .build();
+    }
+}
@@ -0,0 +1,459 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.dto.IntegrityReportDTO;
+import com.example.obligatorio_arbol9.dto.IntegrityViolationDTO;
+import com.example.obligatorio_arbol9.entity.User;
+import com.example.obligatorio_arbol9.repository.RelationshipRepository;
+import com.example.obligatorio_arbol9.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Invariantes del grafo de las que dependen los recorridos de UserService: sin ciclos de ancestros,
+// a lo sumo dos padres, hijos nacidos después que sus padres y cada pareja de cónyuges guardada una sola vez.
+// El escaneo completo lee filas (no entidades) en particiones por rango de ID en paralelo.
+// Los chequeos incrementales bloquean primero las filas de las personas existentes involucradas y cuentan
+// padres e hijos en la tabla relationship, así dos altas concurrentes sobre la misma persona se validan
+// de a una. Los ciclos se buscan en el grafo en memoria: un alta siempre une una persona nueva, así que
+// sólo una fusión puede cerrar un ciclo.
+@Service
+public class GraphIntegrityService {
+
+    private static final Logger log = LoggerFactory.getLogger(GraphIntegrityService.class);
+
+    private static final int FETCH_SIZE = 1000;
+    private static final int MAX_VIOLACIONES = 1000;
+    private static final long SIN_FECHA = Long.MIN_VALUE;
+
+    @Value("${integrity.partitions:4}")
+    private int particiones;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private FamilyGraphService familyGraphService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RelationshipRepository relationshipRepository;
+
+    private JdbcTemplate streamingJdbcTemplate;
+
+    private final ExecutorService escaneos = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "integrity-scan");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile IntegrityReportDTO informe = IntegrityReportDTO.builder().build();
+
+    @PostConstruct
+    public void init() {
+        streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        streamingJdbcTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    public synchronized IntegrityReportDTO iniciarEscaneo() {
+        if (informe.isEnCurso()) {
+            throw new RuntimeException("Ya hay un escaneo de integridad en curso");
+        }
+        informe = IntegrityReportDTO.builder().enCurso(true).inicio(LocalDateTime.now()).build();
+        escaneos.execute(this::escanear);
+        return informe;
+    }
+
+    public IntegrityReportDTO getInforme() {
+        return informe;
+    }
+
+    // ---- Chequeos incrementales (lanzan excepción y la transacción se revierte) ----
+
+    // Antes de agregar la arista hijo -> padre; cualquiera de los dos puede ser nuevo (sin ID).
+    // Debe llamarse dentro de la transacción que agrega la arista: los bloqueos duran hasta que confirme.
+    public void validarNuevoPadre(User hijo, User padre) {
+        List<Long> existentes = new ArrayList<>();
+        if (hijo.getId() != null) {
+            existentes.add(hijo.getId());
+        }
+        if (padre.getId() != null) {
+            existentes.add(padre.getId());
+        }
+        if (!existentes.isEmpty()) {
+            userRepository.lockUsers(existentes);
+        }
+
+        if (hijo.getId() != null) {
+            if (relationshipRepository.lockParentIds(List.of(hijo.getId())).size() >= 2) {
+                throw new RuntimeException("Una persona no puede tener más de dos padres");
+            }
+            if (padre.getId() != null && (padre.getId().equals(hijo.getId())
+                    || familyGraphService.getGraph().esAncestro(hijo.getId(), padre.getId()))) {
+                throw new RuntimeException("La relación formaría un ciclo en el árbol");
+            }
+        }
+        if (nacioAntes(hijo.getFechaNacimiento(), padre.getFechaNacimiento())) {
+            throw new RuntimeException("Un hijo no puede haber nacido antes que su padre o madre");
+        }
+    }
+
+    // Después de cambiar la fecha de nacimiento de un usuario existente
+    public void validarFechas(User user) {
+        FamilyGraph.Vecinos vecinos = familyGraphService.getGraph().vecinos(user.getId());
+        List<Long> ids = new ArrayList<>();
+        Arrays.stream(vecinos.padres()).forEach(ids::add);
+        Arrays.stream(vecinos.hijos()).forEach(ids::add);
+        // Padres e hijos en una sola consulta
+        for (User familiar : userRepository.findAllById(ids)) {
+            if (FamilyGraph.incluye(vecinos.padres(), familiar.getId())
+                    && nacioAntes(user.getFechaNacimiento(), familiar.getFechaNacimiento())) {
+                throw new RuntimeException("La fecha de nacimiento es anterior a la de un padre o madre");
+            }
+            if (FamilyGraph.incluye(vecinos.hijos(), familiar.getId())
+                    && nacioAntes(familiar.getFechaNacimiento(), user.getFechaNacimiento())) {
+                throw new RuntimeException("La fecha de nacimiento es posterior a la de un hijo");
+            }
+        }
+    }
+
+    // Antes de fusionar dos usuarios: el que se conserva recibe los padres e hijos del otro.
+    // Igual que validarNuevoPadre, bloquea a los dos y lee padres e hijos de la base.
+    public void validarFusion(User survivor, User loser) {
+        long s = survivor.getId();
+        long l = loser.getId();
+        List<Long> ambos = List.of(s, l);
+        userRepository.lockUsers(ambos);
+
+        FamilyGraph graph = familyGraphService.getGraph();
+        if (graph.esAncestro(l, s) || graph.esAncestro(s, l)) {
+            throw new RuntimeException("No se puede fusionar una persona con su propio ancestro o descendiente");
+        }
+
+        Set<Long> padres = new HashSet<>();
+        Set<Long> hijos = new HashSet<>();
+        relationshipRepository.lockParentIds(ambos).forEach(id -> padres.add(id.longValue()));
+        relationshipRepository.lockChildIds(ambos).forEach(id -> hijos.add(id.longValue()));
+        padres.removeAll(ambos);
+        hijos.removeAll(ambos);
+        if (padres.size() > 2) {
+            throw new RuntimeException("La persona fusionada tendría más de dos padres");
+        }
+
+        Set<Long> vecinos = new HashSet<>(padres);
+        vecinos.addAll(hijos);
+        for (User vecino : userRepository.findAllById(vecinos)) {
+            boolean invalido = padres.contains(vecino.getId())
+                    ? nacioAntes(survivor.getFechaNacimiento(), vecino.getFechaNacimiento())
+                    : nacioAntes(vecino.getFechaNacimiento(), survivor.getFechaNacimiento());
+            if (invalido) {
+                throw new RuntimeException("La fecha de nacimiento es incompatible con los padres o hijos fusionados");
+            }
+        }
+    }
+
+    private static boolean nacioAntes(LocalDate hijo, LocalDate padre) {
+        return hijo != null && padre != null && hijo.isBefore(padre);
+    }
+
+    // ---- Escaneo completo ----
+
+    // Arreglo de long que crece a demanda, para no guardar millones de Long en colecciones
+    private static final class LongLista {
+        private long[] valores = new long[1024];
+        private int tamanio;
+
+        void agregar(long valor) {
+            if (tamanio == valores.length) {
+                valores = Arrays.copyOf(valores, tamanio * 2);
+            }
+            valores[tamanio++] = valor;
+        }
+
+        long get(int i) {
+            return valores[i];
+        }
+
+        int tamanio() {
+            return tamanio;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(valores, tamanio);
+        }
+    }
+
+    // Aristas hijo -> padre de una partición, ordenadas por hijo
+    private record Aristas(LongLista hijos, LongLista padres) {
+    }
+
+    // Junta las violaciones de todas las particiones; sólo se guardan las primeras
+    private static final class Violaciones {
+        private final AtomicLong total = new AtomicLong();
+        private final List<IntegrityViolationDTO> lista = Collections.synchronizedList(new ArrayList<>());
+
+        void registrar(IntegrityViolationDTO.Tipo tipo, List<Long> ids, String detalle) {
+            if (total.incrementAndGet() <= MAX_VIOLACIONES) {
+                lista.add(IntegrityViolationDTO.builder().tipo(tipo).ids(ids).detalle(detalle).build());
+            }
+        }
+    }
+
+    private void escanear() {
+        Violaciones violaciones = new Violaciones();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, particiones));
+        try {
+            // IDs ordenados y fecha de nacimiento (en días) de cada usuario
+            LongLista listaIds = new LongLista();
+            LongLista listaDias = new LongLista();
+            streamingJdbcTemplate.query("SELECT id, fecha_nacimiento FROM users ORDER BY id", rs -> {
+                listaIds.agregar(rs.getLong(1));
+                Date fecha = rs.getDate(2);
+                listaDias.agregar(fecha == null ? SIN_FECHA : fecha.toLocalDate().toEpochDay());
+            });
+            long[] ids = listaIds.toArray();
+            long[] dias = listaDias.toArray();
+
+            // Rangos con la misma cantidad de usuarios; el último queda abierto
+            int cantidad = Math.max(1, particiones);
+            long[] cortes = new long[cantidad + 1];
+            cortes[0] = Long.MIN_VALUE;
+            cortes[cantidad] = Long.MAX_VALUE;
+            for (int i = 1; i < cantidad; i++) {
+                cortes[i] = ids.length == 0 ? Long.MAX_VALUE : ids[(int) ((long) i * ids.length / cantidad)];
+            }
+
+            List<Future<Aristas>> padres = new ArrayList<>();
+            List<Future<Long>> conyuges = new ArrayList<>();
+            for (int i = 0; i < cantidad; i++) {
+                long desde = cortes[i];
+                long hasta = cortes[i + 1];
+                padres.add(pool.submit(() -> escanearPadres(desde, hasta, ids, dias, violaciones)));
+                conyuges.add(pool.submit(() -> escanearConyuges(desde, hasta, violaciones)));
+            }
+            List<Aristas> aristas = new ArrayList<>();
+            long aristasPadre = 0;
+            for (Future<Aristas> futuro : padres) {
+                Aristas parte = futuro.get();
+                aristas.add(parte);
+                aristasPadre += parte.hijos().tamanio();
+            }
+            long aristasConyuge = 0;
+            for (Future<Long> futuro : conyuges) {
+                aristasConyuge += futuro.get();
+            }
+
+            buscarCiclos(ids, aristas, aristasPadre, violaciones);
+
+            informe = IntegrityReportDTO.builder()
+                    .enCurso(false)
+                    .inicio(informe.getInicio())
+                    .fin(LocalDateTime.now())
+                    .usuarios(ids.length)
+                    .aristasPadre(aristasPadre)
+                    .aristasConyuge(aristasConyuge)
+                    .totalViolaciones(violaciones.total.get())
+                    .violaciones(new ArrayList<>(violaciones.lista))
+                    .build();
+            log.info("Escaneo de integridad terminado: {} usuarios, {} aristas de padres, {} de cónyuges, {} violaciones",
+                    ids.length, aristasPadre, aristasConyuge, violaciones.total.get());
+        } catch (RuntimeException | ExecutionException | InterruptedException e) {
+            log.warn("Falló el escaneo de integridad", e);
+            informe = IntegrityReportDTO.builder()
+                    .enCurso(false)
+                    .inicio(informe.getInicio())
+                    .fin(LocalDateTime.now())
+                    .error(e.getMessage())
+                    .build();
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Una partición de las aristas de padres: cantidad de padres por hijo y orden de nacimiento
+    private Aristas escanearPadres(long desde, long hasta, long[] ids, long[] dias, Violaciones violaciones) {
+        Aristas aristas = new Aristas(new LongLista(), new LongLista());
+        streamingJdbcTemplate.query(
+                "SELECT from_id, to_id FROM relationship WHERE type = 'PADRE' AND from_id >= ? AND from_id < ? ORDER BY from_id",
+                rs -> {
+                    long hijo = rs.getLong(1);
+                    long padre = rs.getLong(2);
+                    aristas.hijos().agregar(hijo);
+                    aristas.padres().agregar(padre);
+                    long diaHijo = dia(ids, dias, hijo);
+                    long diaPadre = dia(ids, dias, padre);
+                    if (diaHijo != SIN_FECHA && diaPadre != SIN_FECHA && diaHijo < diaPadre) {
+                        violaciones.registrar(IntegrityViolationDTO.Tipo.HIJO_ANTES_QUE_PADRE, List.of(hijo, padre),
+                                "Nació el " + LocalDate.ofEpochDay(diaHijo) + ", antes que su padre o madre ("
+                                        + LocalDate.ofEpochDay(diaPadre) + ")");
+                    }
+                }, desde, hasta);
+
+        // Las filas llegan ordenadas por hijo: cada tramo son los padres de una persona
+        LongLista hijos = aristas.hijos();
+        for (int inicio = 0, fin; inicio < hijos.tamanio(); inicio = fin) {
+            fin = inicio + 1;
+            while (fin < hijos.tamanio() && hijos.get(fin) == hijos.get(inicio)) {
+                fin++;
+            }
+            if (fin - inicio > 2) {
+                List<Long> camino = new ArrayList<>();
+                camino.add(hijos.get(inicio));
+                for (int i = inicio; i < fin; i++) {
+                    camino.add(aristas.padres().get(i));
+                }
+                violaciones.registrar(IntegrityViolationDTO.Tipo.MAS_DE_DOS_PADRES, camino,
+                        "Tiene " + (fin - inicio) + " padres");
+            }
+        }
+        return aristas;
+    }
+
+    // Una partición de las aristas de cónyuges: una pareja no debe estar guardada en los dos sentidos
+    private long escanearConyuges(long desde, long hasta, Violaciones violaciones) {
+        AtomicLong filas = new AtomicLong();
+        streamingJdbcTemplate.query(
+                "SELECT c.from_id, c.to_id, r.from_id FROM relationship c " +
+                        "LEFT JOIN relationship r ON r.from_id = c.to_id AND r.type = 'CONYUGE' AND r.to_id = c.from_id " +
+                        "WHERE c.type = 'CONYUGE' AND c.from_id >= ? AND c.from_id < ?",
+                rs -> {
+                    filas.incrementAndGet();
+                    rs.getLong(3);
+                    // Se informa una vez, desde la fila con el menor ID como origen
+                    if (!rs.wasNull() && rs.getLong(1) < rs.getLong(2)) {
+                        violaciones.registrar(IntegrityViolationDTO.Tipo.CONYUGE_DUPLICADO,
+                                List.of(rs.getLong(1), rs.getLong(2)), "La pareja está guardada en los dos sentidos");
+                    }
+                }, desde, hasta);
+        return filas.get();
+    }
+
+    // Orden topológico (Kahn) desde las personas sin padres; quienes nunca quedan libres están en un ciclo
+    // o descienden de uno. Desde cada uno se sube por padres no liberados hasta repetir un nodo.
+    private void buscarCiclos(long[] ids, List<Aristas> particionesAristas, long totalAristas, Violaciones violaciones) {
+        int n = ids.length;
+        int[] hijoDe = new int[(int) totalAristas];
+        int[] padreDe = new int[(int) totalAristas];
+        int m = 0;
+        // Las particiones están en orden de ID y cada una ordenada por hijo: el total queda ordenado por hijo
+        for (Aristas aristas : particionesAristas) {
+            for (int i = 0; i < aristas.hijos().tamanio(); i++) {
+                int hijo = Arrays.binarySearch(ids, aristas.hijos().get(i));
+                int padre = Arrays.binarySearch(ids, aristas.padres().get(i));
+                if (hijo >= 0 && padre >= 0) {
+                    hijoDe[m] = hijo;
+                    padreDe[m] = padre;
+                    m++;
+                }
+            }
+        }
+
+        // padres de cada nodo: padreDe[inicioPadres[v] .. inicioPadres[v + 1])
+        int[] inicioPadres = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            inicioPadres[hijoDe[e] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            inicioPadres[v + 1] += inicioPadres[v];
+        }
+        // hijos de cada nodo, con un ordenamiento por conteo
+        int[] inicioHijos = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            inicioHijos[padreDe[e] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            inicioHijos[v + 1] += inicioHijos[v];
+        }
+        int[] hijos = new int[m];
+        int[] siguiente = Arrays.copyOf(inicioHijos, n);
+        for (int e = 0; e < m; e++) {
+            hijos[siguiente[padreDe[e]]++] = hijoDe[e];
+        }
+
+        int[] pendientes = new int[n];
+        int[] cola = new int[n];
+        int fin = 0;
+        for (int v = 0; v < n; v++) {
+            pendientes[v] = inicioPadres[v + 1] - inicioPadres[v];
+            if (pendientes[v] == 0) {
+                cola[fin++] = v;
+            }
+        }
+        for (int inicio = 0; inicio < fin; inicio++) {
+            int v = cola[inicio];
+            for (int i = inicioHijos[v]; i < inicioHijos[v + 1]; i++) {
+                if (--pendientes[hijos[i]] == 0) {
+                    cola[fin++] = hijos[i];
+                }
+            }
+        }
+        if (fin == n) {
+            return;
+        }
+
+        boolean[] visitado = new boolean[n];
+        int[] posicion = new int[n];
+        Arrays.fill(posicion, -1);
+        for (int s = 0; s < n; s++) {
+            if (pendientes[s] == 0 || visitado[s]) {
+                continue;
+            }
+            List<Integer> camino = new ArrayList<>();
+            int v = s;
+            while (!visitado[v]) {
+                visitado[v] = true;
+                posicion[v] = camino.size();
+                camino.add(v);
+                // Un nodo no liberado siempre tiene al menos un padre no liberado
+                int padre = -1;
+                for (int i = inicioPadres[v]; i < inicioPadres[v + 1]; i++) {
+                    if (pendientes[padreDe[i]] > 0) {
+                        padre = padreDe[i];
+                        break;
+                    }
+                }
+                v = padre;
+            }
+            if (posicion[v] >= 0) {
+                List<Long> ciclo = new ArrayList<>();
+                for (int i = posicion[v]; i < camino.size(); i++) {
+                    ciclo.add(ids[camino.get(i)]);
+                }
+                ciclo.add(ids[v]);
+                violaciones.registrar(IntegrityViolationDTO.Tipo.CICLO, ciclo,
+                        ciclo.size() == 2 ? "Es su propio padre o madre"
+                                : "Ciclo de " + (ciclo.size() - 1) + " personas: cada una es padre o madre de la anterior");
+            }
+            for (int nodo : camino) {
+                posicion[nodo] = -1;
+            }
+        }
+    }
+
+    private static long dia(long[] ids, long[] dias, long id) {
+        int i = Arrays.binarySearch(ids, id);
+        return i >= 0 ? dias[i] : SIN_FECHA;
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        escaneos.shutdownNow();
+    }
+}
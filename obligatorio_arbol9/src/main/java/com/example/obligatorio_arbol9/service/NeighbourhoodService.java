@@ -0,0 +1,88 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.dto.EdgeDTO;
+import com.example.obligatorio_arbol9.dto.FamilyGraphDTO;
+import com.example.obligatorio_arbol9.dto.NeighbourhoodRequest;
+import com.example.obligatorio_arbol9.dto.UserSummaryDTO;
+import com.example.obligatorio_arbol9.entity.User;
+import com.example.obligatorio_arbol9.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+// Vecindario combinado de una o varias raíces en formato nodos + aristas.
+// El tamaño de la respuesta crece con las personas distintas y no con los caminos.
+@Service
+public class NeighbourhoodService {
+
+    private static final int MAX_DEPTH = 10;
+
+    @Autowired
+    private FamilyGraphService familyGraphService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    public FamilyGraphDTO getNeighbourhood(List<Long> roots, int depth) {
+        if (roots == null || roots.isEmpty()) {
+            throw new RuntimeException("Debe indicar al menos una raíz");
+        }
+        if (roots.size() > NeighbourhoodRequest.MAXIMO_RAICES) {
+            throw new RuntimeException("Se pueden pedir como máximo " + NeighbourhoodRequest.MAXIMO_RAICES + " raíces");
+        }
+        if (roots.stream().anyMatch(Objects::isNull)) {
+            throw new RuntimeException("Las raíces no pueden ser nulas");
+        }
+        List<Long> raices = new ArrayList<>(new LinkedHashSet<>(roots));
+        int profundidad = Math.max(0, Math.min(depth, MAX_DEPTH));
+        FamilyGraph graph = familyGraphService.getGraph();
+
+        // Las raíces que no están en el grafo en memoria se comprueban todas juntas en la base
+        Set<Long> fueraDelGrafo = raices.stream()
+                .filter(id -> !graph.contiene(id))
+                .collect(Collectors.toSet());
+        if (!fueraDelGrafo.isEmpty() && userRepository.findAllById(fueraDelGrafo).size() < fueraDelGrafo.size()) {
+            throw new RuntimeException("Usuario no encontrado");
+        }
+
+        // BFS desde todas las raíces a la vez: la profundidad se mide desde la raíz más cercana
+        Set<Long> visitados = graph.alcanzables(raices, profundidad);
+
+        List<EdgeDTO> aristas = new ArrayList<>();
+        for (Long id : visitados) {
+            FamilyGraph.Vecinos vecinos = graph.vecinos(id);
+            for (long padre : vecinos.padres()) {
+                if (visitados.contains(padre)) {
+                    aristas.add(EdgeDTO.builder().desdeId(id).hastaId(padre).tipo(EdgeDTO.Tipo.PADRE).build());
+                }
+            }
+            // Cada pareja de cónyuges se emite una sola vez
+            for (long conyuge : vecinos.conyuges()) {
+                if (id < conyuge && visitados.contains(conyuge)) {
+                    aristas.add(EdgeDTO.builder().desdeId(id).hastaId(conyuge).tipo(EdgeDTO.Tipo.CONYUGE).build());
+                }
+            }
+        }
+
+        List<UserSummaryDTO> nodos = userRepository.findAllById(visitados).stream()
+                .sorted(Comparator.comparing(User::getId))
+                .map(u -> UserSummaryDTO.builder()
+                        .id(u.getId())
+                        .nombre(u.getNombre())
+                        .fechaNacimiento(u.getFechaNacimiento())
+                        .fechaFallecimiento(u.getFechaFallecimiento())
+                        .email(u.getEmail())
+                        .confirmationStatus(u.getConfirmationStatus())
+                        .build())
+                .collect(Collectors.toList());
+
+        return FamilyGraphDTO.builder()
+                .raices(raices)
+                .depth(profundidad)
+                .nodos(nodos)
+                .aristas(aristas)
+                .build();
+    }
+}
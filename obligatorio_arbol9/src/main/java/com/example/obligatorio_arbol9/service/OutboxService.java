@@ -0,0 +1,56 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.entity.OutboxEvent;
+import com.example.obligatorio_arbol9.entity.OutboxEventType;
+import com.example.obligatorio_arbol9.repository.OutboxEventRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Service
+public class OutboxService {
+
+    // Las filas de lectura guardan un árbol de profundidad 2: un cambio afecta a todos los que están a esa distancia
+    static final int PROFUNDIDAD_AFECTADA = ReadModelService.PROFUNDIDAD_ARBOL;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private FamilyGraphService familyGraphService;
+
+    // Debe llamarse dentro de la transacción de la mutación
+    public void publicar(OutboxEventType tipo, Long userId, Long relacionadoId) {
+        FamilyGraph graph = familyGraphService.getGraph();
+        Set<Long> afectados = new HashSet<>(graph.alcanzables(userId, PROFUNDIDAD_AFECTADA));
+        if (relacionadoId != null) {
+            afectados.addAll(graph.alcanzables(relacionadoId, PROFUNDIDAD_AFECTADA));
+        }
+
+        OutboxEvent evento = outboxEventRepository.save(OutboxEvent.builder()
+                .tipo(tipo)
+                .userId(userId)
+                .relacionadoId(relacionadoId)
+                .afectados(afectados.stream().map(String::valueOf).collect(Collectors.joining(",")))
+                .seqGrafo(familyGraphService.ultimoSeqRegistrado())
+                .creado(LocalDateTime.now())
+                .build());
+
+        // Los cambios del grafo pueden registrarse después del evento en la misma transacción:
+        // el seq definitivo se toma justo antes de confirmar
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    evento.setSeqGrafo(familyGraphService.ultimoSeqRegistrado());
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.dto.UserSummaryDTO;
+import com.example.obligatorio_arbol9.dto.UserTreeDTO;
+import com.example.obligatorio_arbol9.entity.OutboxEvent;
+import com.example.obligatorio_arbol9.entity.User;
+import com.example.obligatorio_arbol9.entity.UserReadModel;
+import com.example.obligatorio_arbol9.repository.OutboxEventRepository;
+import com.example.obligatorio_arbol9.repository.RelationshipRepository;
+import com.example.obligatorio_arbol9.repository.UserReadModelRepository;
+import com.example.obligatorio_arbol9.repository.UserRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+// Lado de lectura (CQRS): un proyector en segundo plano consume el outbox y mantiene una fila
+// desnormalizada por persona, así los endpoints de árbol y listado leen una sola fila por usuario.
+@Service
+public class ReadModelService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadModelService.class);
+
+    static final int PROFUNDIDAD_ARBOL = 2;
+    private static final int LOTE = 500;
+    static final int MAX_INTENTOS = 5;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private UserReadModelRepository userReadModelRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RelationshipRepository relationshipRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private FamilyGraphService familyGraphService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // El proyector y el completado inicial escriben las mismas filas: cada transacción se hace con el lock
+    private final ReentrantLock escritura = new ReentrantLock();
+
+    // Consume un lote del outbox y recalcula las filas afectadas.
+    // Un evento se procesa recién cuando el grafo en memoria ya aplicó los cambios de su transacción
+    // (se aplican en afterCommit, un poco después de que el evento es visible); si no, el árbol guardado
+    // saldría del grafo viejo. Cada fila se proyecta en su propia transacción: una que falla no
+    // deshace las demás y su evento se reintenta hasta MAX_INTENTOS veces.
+    @Scheduled(fixedDelayString = "${read-model.projector.interval-ms:500}")
+    public void proyectarPendientes() {
+        List<OutboxEvent> listos = new ArrayList<>();
+        for (OutboxEvent evento : outboxEventRepository.findAllByFallidoFalseOrderByIdAsc(PageRequest.of(0, LOTE))) {
+            if (evento.getSeqGrafo() != null && !familyGraphService.aplicado(evento.getSeqGrafo())) {
+                break; // Los siguientes esperan a la próxima vuelta, en orden
+            }
+            listos.add(evento);
+        }
+        if (listos.isEmpty()) {
+            return;
+        }
+
+        FamilyGraph graph = familyGraphService.getGraph();
+        Map<OutboxEvent, Set<Long>> afectadosPorEvento = new LinkedHashMap<>();
+        Set<Long> afectados = new LinkedHashSet<>();
+        for (OutboxEvent evento : listos) {
+            Set<Long> delEvento = new HashSet<>();
+            if (evento.getAfectados() != null && !evento.getAfectados().isEmpty()) {
+                for (String id : evento.getAfectados().split(",")) {
+                    delEvento.add(Long.valueOf(id));
+                }
+            }
+            delEvento.addAll(graph.alcanzables(evento.getUserId(), PROFUNDIDAD_ARBOL));
+            if (evento.getRelacionadoId() != null) {
+                delEvento.addAll(graph.alcanzables(evento.getRelacionadoId(), PROFUNDIDAD_ARBOL));
+            }
+            afectadosPorEvento.put(evento, delEvento);
+            afectados.addAll(delEvento);
+        }
+
+        Set<Long> fallidos = new HashSet<>();
+        for (Long id : afectados) {
+            try {
+                enTransaccion(() -> proyectar(id));
+            } catch (RuntimeException e) {
+                log.warn("No se pudo proyectar la fila de lectura de {}: {}", id, e.getMessage());
+                fallidos.add(id);
+            }
+        }
+
+        List<OutboxEvent> terminados = new ArrayList<>();
+        List<OutboxEvent> reintentar = new ArrayList<>();
+        afectadosPorEvento.forEach((evento, delEvento) -> {
+            if (Collections.disjoint(delEvento, fallidos)) {
+                terminados.add(evento);
+                return;
+            }
+            evento.setIntentos(evento.getIntentos() + 1);
+            if (evento.getIntentos() >= MAX_INTENTOS) {
+                evento.setFallido(true);
+                log.error("Evento {} del outbox apartado después de {} intentos fallidos", evento.getId(),
+                        evento.getIntentos());
+            }
+            reintentar.add(evento);
+        });
+        enTransaccion(() -> {
+            outboxEventRepository.deleteAllInBatch(terminados);
+            outboxEventRepository.saveAll(reintentar);
+        });
+    }
+
+    // Al arrancar, crea las filas de los usuarios anteriores al modelo de lectura.
+    // Va por páginas, cada una en su propia transacción y vaciando el contexto de persistencia al final,
+    // así la memoria usada no depende del tamaño de la tabla.
+    @EventListener(ApplicationReadyEvent.class)
+    public void completarFaltantes() {
+        long desde = 0;
+        while (true) {
+            List<Long> pagina = userReadModelRepository.findUserIdsWithoutReadModel(desde, PageRequest.of(0, LOTE));
+            if (pagina.isEmpty()) {
+                return;
+            }
+            enTransaccion(() -> {
+                pagina.forEach(this::proyectar);
+                entityManager.flush();
+                entityManager.clear();
+            });
+            desde = pagina.get(pagina.size() - 1);
+        }
+    }
+
+    private void enTransaccion(Runnable trabajo) {
+        escritura.lock();
+        try {
+            transactionTemplate.executeWithoutResult(status -> trabajo.run());
+        } finally {
+            escritura.unlock();
+        }
+    }
+
+    // Árbol precalculado; vacío si la profundidad pedida supera la guardada o la fila aún no existe
+    public Optional<UserTreeDTO> getGenealogyTree(Long userId, int depth) {
+        if (depth < 0 || depth > PROFUNDIDAD_ARBOL) {
+            return Optional.empty();
+        }
+        return userReadModelRepository.findById(userId)
+                .map(fila -> podar(leerArbol(fila.getArbol()), depth));
+    }
+
+    public List<UserSummaryDTO> getAllUsersSummary() {
+        return userReadModelRepository.findAll().stream()
+                .map(fila -> UserSummaryDTO.builder()
+                        .id(fila.getId())
+                        .nombre(fila.getNombre())
+                        .fechaNacimiento(fila.getFechaNacimiento())
+                        .fechaFallecimiento(fila.getFechaFallecimiento())
+                        .email(fila.getEmail())
+                        .confirmationStatus(fila.getConfirmationStatus())
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    private void proyectar(Long id) {
+        Optional<User> optionalUser = userRepository.findById(id);
+        if (optionalUser.isEmpty()) {
+            if (userReadModelRepository.existsById(id)) {
+                userReadModelRepository.deleteById(id);
+            }
+            return;
+        }
+
+        User user = optionalUser.get();
+        UserTreeDTO arbol = userService.getGenealogyTree(id, PROFUNDIDAD_ARBOL);
+
+        // Padres, hijos y cónyuges con una sola consulta a la tabla de relaciones
+        Set<Long> padres = new TreeSet<>();
+        Set<Long> hijos = new TreeSet<>();
+        Set<Long> conyuges = new TreeSet<>();
+        for (RelationshipRepository.Edge arista : relationshipRepository.findEdgesOf(List.of(id))) {
+            boolean saliente = arista.getFromId().equals(id);
+            Long otro = saliente ? arista.getToId() : arista.getFromId();
+            switch (arista.getTipo()) {
+                case PADRE -> (saliente ? padres : hijos).add(otro);
+                case CONYUGE -> conyuges.add(otro);
+                case CONFIRMACION -> {
+                }
+            }
+        }
+
+        userReadModelRepository.save(UserReadModel.builder()
+                .id(user.getId())
+                .nombre(user.getNombre())
+                .fechaNacimiento(user.getFechaNacimiento())
+                .fechaFallecimiento(user.getFechaFallecimiento())
+                .email(user.getEmail())
+                .confirmationStatus(user.getConfirmationStatus())
+                .grado(user.getGrado())
+                .familiaId(user.getFamiliaId())
+                .padresIds(idsSeparados(padres))
+                .hijosIds(idsSeparados(hijos))
+                .conyugesIds(idsSeparados(conyuges))
+                .arbol(escribirArbol(arbol))
+                .actualizado(LocalDateTime.now())
+                .build());
+    }
+
+    // Recorta el árbol guardado a la profundidad pedida
+    private UserTreeDTO podar(UserTreeDTO nodo, int depth) {
+        if (depth == 0) {
+            nodo.setPadres(new ArrayList<>());
+            nodo.setHijos(new ArrayList<>());
+            nodo.setConyuges(new ArrayList<>());
+        } else {
+            nodo.getPadres().forEach(padre -> podar(padre, depth - 1));
+            nodo.getHijos().forEach(hijo -> podar(hijo, depth - 1));
+            nodo.getConyuges().forEach(conyuge -> podar(conyuge, depth - 1));
+        }
+        return nodo;
+    }
+
+    private String idsSeparados(Set<Long> ids) {
+        return ids.stream()
+                .map(String::valueOf)
+                .collect(Collectors.joining(","));
+    }
+
+    private String escribirArbol(UserTreeDTO arbol) {
+        try {
+            return objectMapper.writeValueAsString(arbol);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("No se pudo serializar el árbol", e);
+        }
+    }
+
+    private UserTreeDTO leerArbol(String json) {
+        try {
+            return objectMapper.readValue(json, UserTreeDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("No se pudo leer el árbol precalculado", e);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.exception.ServiceOverloadedException;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Agrupa pedidos idénticos concurrentes (single-flight): el primero en llegar calcula el resultado
+// y los demás con la misma clave esperan ese mismo cálculo en lugar de repetirlo.
+// Además limita cuántos cálculos corren a la vez y cuántos esperan turno; pasado eso responde 503.
+@Service
+public class RequestCoalescer {
+
+    @Value("${coalescing.max-concurrent:8}")
+    private int maxConcurrentes;
+
+    @Value("${coalescing.max-queued:100}")
+    private int maxEnCola;
+
+    @Value("${coalescing.queue-timeout-ms:2000}")
+    private long esperaMaximaMs;
+
+    @Value("${coalescing.max-waiters-per-key:100}")
+    private int maxEsperandoPorClave;
+
+    @Value("${coalescing.retry-after-seconds:1}")
+    private long reintentarEnSegundos;
+
+    private final ConcurrentHashMap<String, Vuelo> enVuelo = new ConcurrentHashMap<>();
+
+    // Cálculos corriendo; la admisión cuenta además los que esperan un permiso
+    private Semaphore permisos;
+    private Semaphore admision;
+
+    private record Vuelo(CompletableFuture<Object> resultado, AtomicInteger esperando) {
+    }
+
+    @PostConstruct
+    public void init() {
+        permisos = new Semaphore(maxConcurrentes);
+        admision = new Semaphore(maxConcurrentes + maxEnCola);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T ejecutar(String clave, Supplier<T> calculo) {
+        Vuelo propio = new Vuelo(new CompletableFuture<>(), new AtomicInteger());
+        Vuelo existente = enVuelo.putIfAbsent(clave, propio);
+        if (existente != null) {
+            return (T) esperar(existente);
+        }
+
+        try {
+            T resultado = calcular(calculo);
+            propio.resultado().complete(resultado);
+            return resultado;
+        } catch (RuntimeException | Error e) {
+            propio.resultado().completeExceptionally(e);
+            throw e;
+        } finally {
+            enVuelo.remove(clave, propio);
+        }
+    }
+
+    private <T> T calcular(Supplier<T> calculo) {
+        if (!admision.tryAcquire()) {
+            throw sobrecarga();
+        }
+        try {
+            if (!permisos.tryAcquire(esperaMaximaMs, TimeUnit.MILLISECONDS)) {
+                throw sobrecarga();
+            }
+            try {
+                return calculo.get();
+            } finally {
+                permisos.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw sobrecarga();
+        } finally {
+            admision.release();
+        }
+    }
+
+    // Los que llegan mientras hay un cálculo en curso comparten su resultado (o su error)
+    private Object esperar(Vuelo vuelo) {
+        if (vuelo.esperando().incrementAndGet() > maxEsperandoPorClave) {
+            vuelo.esperando().decrementAndGet();
+            throw sobrecarga();
+        }
+        try {
+            return vuelo.resultado().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        } finally {
+            vuelo.esperando().decrementAndGet();
+        }
+    }
+
+    private ServiceOverloadedException sobrecarga() {
+        return new ServiceOverloadedException("Servidor ocupado, reintente en unos segundos", reintentarEnSegundos);
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.dto.TreeChangeEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Difunde los cambios del árbol a los suscriptores SSE de cada familia.
+// Publicar nunca bloquea: cada suscriptor tiene un buffer acotado y, si se llena,
+// se descartan sus eventos pendientes y se le pide que se resincronice.
+// Los envíos salen de un pool fijo de send-threads hilos; cada suscriptor tiene a lo sumo una tarea
+// en la cola, así que la cola no crece más que la cantidad de suscriptores. Un cliente lento ocupa
+// un hilo como mucho send-timeout-ms: pasado ese tiempo se lo desconecta.
+@Service
+public class TreeEventService {
+
+    private static final long TIMEOUT_MS = 30 * 60 * 1000L;
+
+    @Value("${tree-events.buffer-size:256}")
+    private int bufferSize;
+
+    @Value("${tree-events.send-timeout-ms:10000}")
+    private long envioMaximoMs;
+
+    @Value("${tree-events.send-threads:8}")
+    private int hilosDeEnvio;
+
+    private final Map<Long, Set<Suscriptor>> suscriptoresPorFamilia = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor envios;
+
+    @PostConstruct
+    public void init() {
+        envios = new ThreadPoolExecutor(hilosDeEnvio, hilosDeEnvio, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "tree-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        envios.allowCoreThreadTimeOut(true);
+    }
+
+    private class Suscriptor {
+        // Cambia si su familia se fusiona con otra o se parte
+        volatile Long familiaId;
+        // Persona desde la que se mira el árbol; decide a qué parte sigue si la familia se parte
+        final Long raizId;
+        final SseEmitter emitter = crearEmitter();
+        final BlockingQueue<TreeChangeEvent> pendientes = new ArrayBlockingQueue<>(bufferSize);
+        final AtomicBoolean enviando = new AtomicBoolean();
+        volatile boolean resincronizar;
+        // Momento en que empezó el envío en curso, 0 si no hay ninguno
+        volatile long enviandoDesde;
+
+        Suscriptor(Long familiaId, Long raizId) {
+            this.familiaId = familiaId;
+            this.raizId = raizId;
+        }
+
+        void encolar(TreeChangeEvent evento) {
+            if (!pendientes.offer(evento)) {
+                pendientes.clear();
+                resincronizar = true;
+            }
+            programarEnvio();
+        }
+
+        void programarEnvio() {
+            if (enviando.compareAndSet(false, true)) {
+                envios.execute(this::drenar);
+            }
+        }
+
+        // Un único hilo por suscriptor a la vez, para que los eventos salgan en orden
+        void drenar() {
+            try {
+                while (true) {
+                    if (resincronizar) {
+                        resincronizar = false;
+                        enviar(TreeChangeEvent.builder().tipo(TreeChangeEvent.Tipo.RESINCRONIZAR).build());
+                    }
+                    TreeChangeEvent evento = pendientes.poll();
+                    if (evento == null) {
+                        break;
+                    }
+                    enviar(evento);
+                }
+            } catch (IOException | IllegalStateException e) {
+                quitar(this);
+                return;
+            } finally {
+                enviando.set(false);
+            }
+            // Pudo llegar un evento entre el último poll y liberar el flag
+            if (!pendientes.isEmpty() || resincronizar) {
+                programarEnvio();
+            }
+        }
+
+        private void enviar(TreeChangeEvent evento) throws IOException {
+            enviandoDesde = System.currentTimeMillis();
+            try {
+                emitter.send(SseEmitter.event().name("change").data(evento));
+            } finally {
+                enviandoDesde = 0;
+            }
+        }
+    }
+
+    SseEmitter crearEmitter() {
+        return new SseEmitter(TIMEOUT_MS);
+    }
+
+    public SseEmitter suscribir(Long familiaId, Long raizId) {
+        Suscriptor suscriptor = new Suscriptor(familiaId, raizId);
+        suscriptoresPorFamilia.computeIfAbsent(familiaId, id -> ConcurrentHashMap.newKeySet()).add(suscriptor);
+        suscriptor.emitter.onCompletion(() -> quitar(suscriptor));
+        suscriptor.emitter.onTimeout(() -> quitar(suscriptor));
+        suscriptor.emitter.onError(e -> quitar(suscriptor));
+        return suscriptor.emitter;
+    }
+
+    // Publica los eventos cuando la transacción actual confirma; si se revierte, no se envía nada
+    public void publicar(Long familiaId, TreeChangeEvent... eventos) {
+        if (familiaId == null) {
+            return;
+        }
+        List<TreeChangeEvent> lista = List.of(eventos);
+        alConfirmar(() -> difundir(familiaId, lista));
+    }
+
+    private void difundir(Long familiaId, List<TreeChangeEvent> eventos) {
+        Set<Suscriptor> suscriptores = suscriptoresPorFamilia.get(familiaId);
+        if (suscriptores == null) {
+            return;
+        }
+        for (Suscriptor suscriptor : suscriptores) {
+            eventos.forEach(suscriptor::encolar);
+        }
+    }
+
+    // Cuando dos familias se unen, quienes miraban la de origen pasan a recibir los eventos de la de destino
+    public void fusionarFamilias(Long destinoId, Long origenId) {
+        if (destinoId == null || origenId == null || destinoId.equals(origenId)) {
+            return;
+        }
+        alConfirmar(() -> {
+            Set<Suscriptor> origen = suscriptoresPorFamilia.remove(origenId);
+            if (origen != null) {
+                origen.forEach(suscriptor -> suscriptor.familiaId = destinoId);
+                suscriptoresPorFamilia.computeIfAbsent(destinoId, id -> ConcurrentHashMap.newKeySet()).addAll(origen);
+            }
+        });
+    }
+
+    // Cuando una familia se parte, quienes miran el árbol de alguno de los miembros que pasaron
+    // a la familia nueva la siguen
+    public void separarFamilia(Long origenId, Long destinoId, Set<Long> miembros) {
+        alConfirmar(() -> {
+            Set<Suscriptor> origen = suscriptoresPorFamilia.get(origenId);
+            if (origen == null) {
+                return;
+            }
+            for (Suscriptor suscriptor : origen) {
+                if (miembros.contains(suscriptor.raizId)) {
+                    quitar(suscriptor);
+                    suscriptor.familiaId = destinoId;
+                    suscriptoresPorFamilia.computeIfAbsent(destinoId, id -> ConcurrentHashMap.newKeySet()).add(suscriptor);
+                }
+            }
+        });
+    }
+
+    private void alConfirmar(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    accion.run();
+                }
+            });
+        } else {
+            accion.run();
+        }
+    }
+
+    // Desconecta a los clientes cuyo envío lleva trabado más del máximo (ventana TCP llena, cliente colgado)
+    @Scheduled(fixedDelayString = "${tree-events.send-timeout-check-ms:1000}")
+    public void desconectarTrabados() {
+        long ahora = System.currentTimeMillis();
+        suscriptoresPorFamilia.values().forEach(suscriptores -> suscriptores.forEach(suscriptor -> {
+            long desde = suscriptor.enviandoDesde;
+            if (desde != 0 && ahora - desde > envioMaximoMs) {
+                quitar(suscriptor);
+                suscriptor.emitter.completeWithError(new IOException("Envío SSE trabado"));
+            }
+        }));
+    }
+
+    private void quitar(Suscriptor suscriptor) {
+        suscriptoresPorFamilia.computeIfPresent(suscriptor.familiaId, (id, suscriptores) -> {
+            suscriptores.remove(suscriptor);
+            return suscriptores.isEmpty() ? null : suscriptores;
+        });
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        envios.shutdownNow();
+        suscriptoresPorFamilia.values().forEach(suscriptores ->
+                suscriptores.forEach(suscriptor -> suscriptor.emitter.complete()));
+    }
+}
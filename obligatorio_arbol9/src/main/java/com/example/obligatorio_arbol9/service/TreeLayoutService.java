@@ -0,0 +1,342 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.dto.EdgeDTO;
+import com.example.obligatorio_arbol9.dto.LayoutNodeDTO;
+import com.example.obligatorio_arbol9.dto.TreeLayoutDTO;
+import com.example.obligatorio_arbol9.entity.User;
+import com.example.obligatorio_arbol9.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Diagramación del árbol en el servidor (estilo Reingold-Tilford): ancestros hacia arriba y descendientes
+// hacia abajo de la raíz. Cada unidad es una persona con sus cónyuges (o los padres de alguien) uno al lado
+// del otro; los subárboles se acercan comparando sus contornos nivel por nivel y cada unidad queda centrada
+// sobre sus hijos. Con varios padres o caminos, la persona se ubica una sola vez (la primera vez que se
+// alcanza) y el resto de las relaciones quedan como aristas.
+// Las coordenadas se guardan por raíz y profundidad junto con la versión del grafo en memoria con la que se
+// calcularon; siguen valiendo mientras ningún cambio posterior toque a una persona del diagrama.
+// Cada pedido devuelve sólo lo visible en la ventana.
+@Service
+public class TreeLayoutService {
+
+    static final double ANCHO_NODO = 160;
+    static final double ALTO_NODO = 60;
+    private static final double SEPARACION_CONYUGE = 20;
+    private static final double SEPARACION_SUBARBOL = 40;
+    private static final double ALTO_GENERACION = 120;
+    private static final int MAX_DEPTH = 30;
+
+    @Value("${layout.cache-size:200}")
+    private int tamanioCache;
+
+    @Autowired
+    private FamilyGraphService familyGraphService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Map<String, Diagrama> cache;
+
+    // Coordenadas calculadas para una raíz y profundidad en una versión del grafo
+    private record Diagrama(long version, long[] ids, double[] xs, double[] ys, int[] generaciones,
+                            List<EdgeDTO> aristas, double minX, double minY, double maxX, double maxY) {
+    }
+
+    private static final class Unidad {
+        final List<Long> miembros;
+        final List<Unidad> hijos = new ArrayList<>();
+        double relativo; // Posición respecto de la unidad padre
+
+        Unidad(List<Long> miembros) {
+            this.miembros = miembros;
+        }
+
+        double ancho() {
+            return miembros.size() * ANCHO_NODO + (miembros.size() - 1) * SEPARACION_CONYUGE;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        // LRU acotado: las familias que nadie mira dejan de ocupar memoria
+        cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Diagrama> eldest) {
+                return size() > tamanioCache;
+            }
+        });
+    }
+
+    public TreeLayoutDTO getLayout(Long userId, int depth, Double minX, Double minY, Double maxX, Double maxY) {
+        int profundidad = Math.max(0, Math.min(depth, MAX_DEPTH));
+        if (!familyGraphService.getGraph().contiene(userId) && !userRepository.existsById(userId)) {
+            throw new RuntimeException("Usuario no encontrado");
+        }
+        // Se lee antes de recorrer el grafo: si un cambio llega durante el cálculo, el diagrama queda con
+        // una versión anterior y el próximo pedido lo revisa
+        long version = familyGraphService.getVersion();
+
+        String clave = userId + ":" + profundidad;
+        Diagrama diagrama = cache.get(clave);
+        if (diagrama == null || !vigente(diagrama, version)) {
+            diagrama = diagramar(userId, profundidad, version);
+            cache.put(clave, diagrama);
+        } else if (diagrama.version() != version) {
+            // Sigue valiendo: se adelanta su versión para no volver a revisar los mismos cambios
+            diagrama = new Diagrama(version, diagrama.ids(), diagrama.xs(), diagrama.ys(), diagrama.generaciones(),
+                    diagrama.aristas(), diagrama.minX(), diagrama.minY(), diagrama.maxX(), diagrama.maxY());
+            cache.put(clave, diagrama);
+        }
+
+        double desdeX = minX == null ? Double.NEGATIVE_INFINITY : minX;
+        double desdeY = minY == null ? Double.NEGATIVE_INFINITY : minY;
+        double hastaX = maxX == null ? Double.POSITIVE_INFINITY : maxX;
+        double hastaY = maxY == null ? Double.POSITIVE_INFINITY : maxY;
+
+        List<Integer> visibles = new ArrayList<>();
+        Map<Long, Integer> indices = new HashMap<>();
+        for (int i = 0; i < diagrama.ids().length; i++) {
+            indices.put(diagrama.ids()[i], i);
+            if (diagrama.xs()[i] < hastaX && diagrama.xs()[i] + ANCHO_NODO > desdeX
+                    && diagrama.ys()[i] < hastaY && diagrama.ys()[i] + ALTO_NODO > desdeY) {
+                visibles.add(i);
+            }
+        }
+
+        // Una arista es visible si el rectángulo que ocupa entre los centros de sus nodos toca la ventana
+        List<EdgeDTO> aristas = new ArrayList<>();
+        for (EdgeDTO arista : diagrama.aristas()) {
+            int a = indices.get(arista.getDesdeId());
+            int b = indices.get(arista.getHastaId());
+            double x1 = diagrama.xs()[a] + ANCHO_NODO / 2;
+            double x2 = diagrama.xs()[b] + ANCHO_NODO / 2;
+            double y1 = diagrama.ys()[a] + ALTO_NODO / 2;
+            double y2 = diagrama.ys()[b] + ALTO_NODO / 2;
+            if (Math.min(x1, x2) <= hastaX && Math.max(x1, x2) >= desdeX
+                    && Math.min(y1, y2) <= hastaY && Math.max(y1, y2) >= desdeY) {
+                aristas.add(arista);
+            }
+        }
+
+        Diagrama d = diagrama;
+        Map<Long, User> usuarios = userRepository.findAllById(
+                        visibles.stream().map(i -> d.ids()[i]).collect(Collectors.toList())).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        List<LayoutNodeDTO> nodos = new ArrayList<>();
+        for (int i : visibles) {
+            User user = usuarios.get(d.ids()[i]);
+            if (user != null) {
+                nodos.add(LayoutNodeDTO.builder()
+                        .id(user.getId())
+                        .nombre(user.getNombre())
+                        .fechaNacimiento(user.getFechaNacimiento())
+                        .fechaFallecimiento(user.getFechaFallecimiento())
+                        .confirmationStatus(user.getConfirmationStatus())
+                        .x(d.xs()[i])
+                        .y(d.ys()[i])
+                        .generacion(d.generaciones()[i])
+                        .build());
+            }
+        }
+
+        return TreeLayoutDTO.builder()
+                .raiz(userId)
+                .depth(profundidad)
+                .version(diagrama.version())
+                .anchoNodo(ANCHO_NODO)
+                .altoNodo(ALTO_NODO)
+                .minX(d.minX())
+                .minY(d.minY())
+                .maxX(d.maxX())
+                .maxY(d.maxY())
+                .totalNodos(d.ids().length)
+                .nodos(nodos)
+                .aristas(aristas)
+                .build();
+    }
+
+    // Un diagrama sigue valiendo si los cambios posteriores no tocan a ninguna de sus personas
+    private boolean vigente(Diagrama diagrama, long version) {
+        if (diagrama.version() == version) {
+            return true;
+        }
+        Set<Long> tocados = familyGraphService.tocadosDesde(diagrama.version());
+        if (tocados == null) {
+            return false;
+        }
+        for (long id : diagrama.ids()) {
+            if (tocados.contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Diagrama diagramar(Long userId, int profundidad, long version) {
+        FamilyGraph graph = familyGraphService.getGraph();
+        Set<Long> ubicados = new HashSet<>();
+        ubicados.add(userId);
+        Unidad descendientes = new Unidad(conConyuges(userId, graph, ubicados));
+        Unidad ancestros = new Unidad(descendientes.miembros);
+        construir(descendientes, profundidad, graph, ubicados, true);
+        construir(ancestros, profundidad, graph, ubicados, false);
+
+        posicionar(descendientes);
+        posicionar(ancestros);
+
+        // Ambas mitades comparten la unidad raíz en x = 0
+        Map<Long, double[]> posiciones = new LinkedHashMap<>();
+        asignar(descendientes, 0, 0, 1, posiciones);
+        asignar(ancestros, 0, 0, -1, posiciones);
+
+        int n = posiciones.size();
+        long[] ids = new long[n];
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        int[] generaciones = new int[n];
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        int i = 0;
+        for (Map.Entry<Long, double[]> entry : posiciones.entrySet()) {
+            ids[i] = entry.getKey();
+            xs[i] = entry.getValue()[0];
+            ys[i] = entry.getValue()[1];
+            generaciones[i] = (int) entry.getValue()[2];
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i] + ANCHO_NODO);
+            maxY = Math.max(maxY, ys[i] + ALTO_NODO);
+            i++;
+        }
+
+        List<EdgeDTO> aristas = new ArrayList<>();
+        for (Long id : posiciones.keySet()) {
+            FamilyGraph.Vecinos vecinos = graph.vecinos(id);
+            for (long padre : vecinos.padres()) {
+                if (posiciones.containsKey(padre)) {
+                    aristas.add(EdgeDTO.builder().desdeId(id).hastaId(padre).tipo(EdgeDTO.Tipo.PADRE).build());
+                }
+            }
+            for (long conyuge : vecinos.conyuges()) {
+                if (id < conyuge && posiciones.containsKey(conyuge)) {
+                    aristas.add(EdgeDTO.builder().desdeId(id).hastaId(conyuge).tipo(EdgeDTO.Tipo.CONYUGE).build());
+                }
+            }
+        }
+
+        return new Diagrama(version, ids, xs, ys, generaciones, aristas, minX, minY, maxX, maxY);
+    }
+
+    // Arma por niveles el árbol de unidades hacia los hijos o hacia los padres
+    private void construir(Unidad raiz, int profundidad, FamilyGraph graph, Set<Long> ubicados, boolean haciaHijos) {
+        List<Unidad> nivel = List.of(raiz);
+        for (int l = 0; l < profundidad && !nivel.isEmpty(); l++) {
+            List<Unidad> siguiente = new ArrayList<>();
+            for (Unidad unidad : nivel) {
+                for (long miembro : unidad.miembros) {
+                    FamilyGraph.Vecinos vecinos = graph.vecinos(miembro);
+                    if (haciaHijos) {
+                        for (long hijo : vecinos.hijos()) {
+                            if (ubicados.add(hijo)) {
+                                Unidad nueva = new Unidad(conConyuges(hijo, graph, ubicados));
+                                unidad.hijos.add(nueva);
+                                siguiente.add(nueva);
+                            }
+                        }
+                    } else {
+                        List<Long> padres = new ArrayList<>();
+                        for (long padre : vecinos.padres()) {
+                            if (ubicados.add(padre)) {
+                                padres.add(padre);
+                            }
+                        }
+                        if (!padres.isEmpty()) {
+                            Unidad nueva = new Unidad(padres);
+                            unidad.hijos.add(nueva);
+                            siguiente.add(nueva);
+                        }
+                    }
+                }
+            }
+            nivel = siguiente;
+        }
+    }
+
+    private List<Long> conConyuges(long id, FamilyGraph graph, Set<Long> ubicados) {
+        List<Long> miembros = new ArrayList<>();
+        miembros.add(id);
+        for (long conyuge : graph.vecinos(id).conyuges()) {
+            if (ubicados.add(conyuge)) {
+                miembros.add(conyuge);
+            }
+        }
+        return miembros;
+    }
+
+    // Ubica los hijos de la unidad de izquierda a derecha y devuelve el contorno del subárbol:
+    // por cada nivel, el borde izquierdo y derecho relativos al borde izquierdo de la unidad
+    private List<double[]> posicionar(Unidad unidad) {
+        List<double[]> contorno = new ArrayList<>();
+        contorno.add(new double[]{0, unidad.ancho()});
+        if (unidad.hijos.isEmpty()) {
+            return contorno;
+        }
+
+        List<double[]> bloque = new ArrayList<>();
+        double[] desplazamientos = new double[unidad.hijos.size()];
+        for (int i = 0; i < unidad.hijos.size(); i++) {
+            List<double[]> subarbol = posicionar(unidad.hijos.get(i));
+            double desplazamiento = 0;
+            if (i > 0) {
+                // Lo mínimo para que en ningún nivel común se superponga con lo ya ubicado
+                desplazamiento = Double.NEGATIVE_INFINITY;
+                for (int l = 0; l < Math.min(bloque.size(), subarbol.size()); l++) {
+                    desplazamiento = Math.max(desplazamiento, bloque.get(l)[1] + SEPARACION_SUBARBOL - subarbol.get(l)[0]);
+                }
+            }
+            desplazamientos[i] = desplazamiento;
+            for (int l = 0; l < subarbol.size(); l++) {
+                double izquierda = subarbol.get(l)[0] + desplazamiento;
+                double derecha = subarbol.get(l)[1] + desplazamiento;
+                if (l < bloque.size()) {
+                    bloque.get(l)[0] = Math.min(bloque.get(l)[0], izquierda);
+                    bloque.get(l)[1] = Math.max(bloque.get(l)[1], derecha);
+                } else {
+                    bloque.add(new double[]{izquierda, derecha});
+                }
+            }
+        }
+
+        // La unidad queda centrada entre el primer y el último hijo
+        Unidad primero = unidad.hijos.get(0);
+        Unidad ultimo = unidad.hijos.get(unidad.hijos.size() - 1);
+        double centro = (desplazamientos[0] + primero.ancho() / 2
+                + desplazamientos[desplazamientos.length - 1] + ultimo.ancho() / 2) / 2;
+        double origen = centro - unidad.ancho() / 2;
+        for (int i = 0; i < unidad.hijos.size(); i++) {
+            unidad.hijos.get(i).relativo = desplazamientos[i] - origen;
+        }
+        for (double[] nivel : bloque) {
+            contorno.add(new double[]{nivel[0] - origen, nivel[1] - origen});
+        }
+        return contorno;
+    }
+
+    private void asignar(Unidad unidad, double x, int nivel, int sentido, Map<Long, double[]> posiciones) {
+        for (int i = 0; i < unidad.miembros.size(); i++) {
+            posiciones.putIfAbsent(unidad.miembros.get(i), new double[]{
+                    x + i * (ANCHO_NODO + SEPARACION_CONYUGE),
+                    sentido * nivel * ALTO_GENERACION,
+                    sentido * nivel});
+        }
+        for (Unidad hijo : unidad.hijos) {
+            asignar(hijo, x + hijo.relativo, nivel + 1, sentido, posiciones);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.dto.TreeChangeEvent;
+import com.example.obligatorio_arbol9.entity.*;
+import com.example.obligatorio_arbol9.repository.DuplicateCandidateRepository;
+import com.example.obligatorio_arbol9.repository.UserRepository;
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Fusiona dos usuarios que son la misma persona: todas las relaciones del eliminado pasan al que se conserva
+// con sentencias sobre conjuntos (sin cargar las colecciones de la entidad).
+@Service
+public class UserMergeService {
+
+    @Autowired
+    private DuplicateCandidateRepository duplicateCandidateRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FamilyStatsService familyStatsService;
+
+    @Autowired
+    private FamilyGraphService familyGraphService;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private TreeEventService treeEventService;
+
+    @Autowired
+    private GraphIntegrityService graphIntegrityService;
+
+    @Transactional
+    public void merge(Long candidatoId, Long survivorId) {
+        DuplicateCandidate candidato = duplicateCandidateRepository.findById(candidatoId)
+                .orElseThrow(() -> new RuntimeException("Candidato no encontrado"));
+        if (candidato.getEstado() != DuplicateStatus.PENDIENTE) {
+            throw new RuntimeException("El candidato ya fue resuelto");
+        }
+        Long loserId;
+        if (survivorId.equals(candidato.getUserAId())) {
+            loserId = candidato.getUserBId();
+        } else if (survivorId.equals(candidato.getUserBId())) {
+            loserId = candidato.getUserAId();
+        } else {
+            throw new RuntimeException("El usuario a conservar debe ser parte del par");
+        }
+
+        User survivor = userRepository.findById(survivorId)
+                .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+        User loser = userRepository.findById(loserId)
+                .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+        graphIntegrityService.validarFusion(survivor, loser);
+
+        // Lo que hace falta saber del eliminado antes de reasignar sus relaciones
+        FamilyStatsService.Aporte aporteLoser = FamilyStatsService.Aporte.of(loser);
+        Long familiaLoser = loser.getFamiliaId();
+        Long familiaSurvivor = survivor.getFamiliaId();
+        FamilyGraph.Vecinos vecinos = familyGraphService.getGraph().vecinos(loserId);
+        outboxService.publicar(OutboxEventType.USUARIO_ELIMINADO, loserId, survivorId);
+
+        // Relaciones que salen del eliminado. Padres y cónyuges entre los dos se descartan (serían lazos
+        // sobre sí mismo), y un cónyuge ya guardado en el otro sentido no se duplica.
+        // Una autoconfirmación del eliminado pasa a ser del que se conserva.
+        jdbcTemplate.update("INSERT IGNORE INTO relationship (from_id, to_id, type, metadata) " +
+                        "SELECT ?, CASE WHEN r.to_id = ? THEN ? ELSE r.to_id END, r.type, r.metadata " +
+                        "FROM relationship r WHERE r.from_id = ? " +
+                        "AND NOT (r.type <> 'CONFIRMACION' AND r.to_id IN (?, ?)) " +
+                        "AND NOT (r.type = 'CONYUGE' AND EXISTS (SELECT 1 FROM relationship e " +
+                        "WHERE e.type = 'CONYUGE' AND e.from_id = r.to_id AND e.to_id = ?))",
+                survivorId, loserId, survivorId, loserId, loserId, survivorId, survivorId);
+        // Relaciones que llegan al eliminado
+        jdbcTemplate.update("INSERT IGNORE INTO relationship (from_id, to_id, type, metadata) " +
+                        "SELECT r.from_id, ?, r.type, r.metadata " +
+                        "FROM relationship r WHERE r.to_id = ? AND r.from_id <> ? " +
+                        "AND NOT (r.type <> 'CONFIRMACION' AND r.from_id = ?) " +
+                        "AND NOT (r.type = 'CONYUGE' AND EXISTS (SELECT 1 FROM relationship e " +
+                        "WHERE e.type = 'CONYUGE' AND e.from_id = ? AND e.to_id = r.from_id))",
+                survivorId, loserId, loserId, survivorId, survivorId);
+        jdbcTemplate.update("DELETE FROM relationship WHERE from_id = ? OR to_id = ?", loserId, loserId);
+
+        jdbcTemplate.update("DELETE FROM users WHERE id = ?", loserId);
+
+        // Estadísticas: si eran de familias distintas, ahora son una sola
+        Long familia = familiaSurvivor != null ? familiaSurvivor : familiaLoser;
+        familyStatsService.fusionarFamilias(familia, familiaLoser);
+        familyStatsService.miembroEliminado(familia, aporteLoser);
+
+        // Grafo en memoria: las aristas se aplican en orden al confirmar, y al final se quita el nodo.
+        // A los clientes se les avisa cada arista que pasa al que se conserva y cada una que desaparece.
+        List<TreeChangeEvent> eventos = new ArrayList<>();
+        for (long padre : vecinos.padres()) {
+            if (padre != survivorId) {
+                familyGraphService.registrar(GraphChangeType.PADRE_AGREGADO, survivorId, padre);
+                eventos.add(arista(TreeChangeEvent.Tipo.ARISTA_AGREGADA, TreeChangeEvent.Relacion.PADRE, survivorId, padre));
+            }
+            eventos.add(arista(TreeChangeEvent.Tipo.ARISTA_QUITADA, TreeChangeEvent.Relacion.PADRE, loserId, padre));
+        }
+        for (long hijo : vecinos.hijos()) {
+            if (hijo != survivorId) {
+                familyGraphService.registrar(GraphChangeType.PADRE_AGREGADO, hijo, survivorId);
+                eventos.add(arista(TreeChangeEvent.Tipo.ARISTA_AGREGADA, TreeChangeEvent.Relacion.PADRE, hijo, survivorId));
+            }
+            eventos.add(arista(TreeChangeEvent.Tipo.ARISTA_QUITADA, TreeChangeEvent.Relacion.PADRE, hijo, loserId));
+        }
+        for (long conyuge : vecinos.conyuges()) {
+            if (conyuge != survivorId) {
+                familyGraphService.registrar(GraphChangeType.CONYUGE_AGREGADO, survivorId, conyuge);
+                eventos.add(arista(TreeChangeEvent.Tipo.ARISTA_AGREGADA, TreeChangeEvent.Relacion.CONYUGE, survivorId, conyuge));
+            }
+            eventos.add(arista(TreeChangeEvent.Tipo.ARISTA_QUITADA, TreeChangeEvent.Relacion.CONYUGE, loserId, conyuge));
+        }
+        for (long confirmador : vecinos.confirmadoPor()) {
+            familyGraphService.registrar(GraphChangeType.CONFIRMACION_AGREGADA, survivorId,
+                    confirmador == loserId ? survivorId : confirmador);
+        }
+        for (long confirmado : vecinos.confirmo()) {
+            // La autoconfirmación ya quedó registrada en el ciclo anterior
+            if (confirmado != loserId) {
+                familyGraphService.registrar(GraphChangeType.CONFIRMACION_AGREGADA, confirmado, survivorId);
+            }
+        }
+        familyGraphService.registrar(GraphChangeType.NODO_ELIMINADO, loserId, null);
+        eventos.add(TreeChangeEvent.builder().tipo(TreeChangeEvent.Tipo.NODO_ELIMINADO).id(loserId).build());
+
+        candidato.setEstado(DuplicateStatus.FUSIONADO);
+        duplicateCandidateRepository.save(candidato);
+        duplicateCandidateRepository.updatePendingInvolving(loserId, DuplicateStatus.DESCARTADO);
+
+        if (familiaLoser == null || familiaLoser.equals(familia)) {
+            treeEventService.publicar(familia, eventos.toArray(new TreeChangeEvent[0]));
+        } else {
+            // Se unieron dos familias: cada lado ve de golpe la otra mitad, así que vuelven a pedir el árbol
+            // y quienes miraban la familia eliminada pasan a la que queda
+            TreeChangeEvent resincronizar = TreeChangeEvent.builder().tipo(TreeChangeEvent.Tipo.RESINCRONIZAR).build();
+            treeEventService.publicar(familia, resincronizar);
+            treeEventService.publicar(familiaLoser, resincronizar);
+            treeEventService.fusionarFamilias(familia, familiaLoser);
+        }
+    }
+
+    private static TreeChangeEvent arista(TreeChangeEvent.Tipo tipo, TreeChangeEvent.Relacion relacion,
+                                          Long desdeId, Long hastaId) {
+        return TreeChangeEvent.builder()
+                .tipo(tipo)
+                .relacion(relacion)
+                .desdeId(desdeId)
+                .hastaId(hastaId)
+                .build();
+    }
+}
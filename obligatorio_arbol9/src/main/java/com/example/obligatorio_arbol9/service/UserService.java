@@ -2,7 +2,10 @@ package com.example.obligatorio_arbol9.service;
 
 import com.example.obligatorio_arbol9.dto.*;
 import com.example.obligatorio_arbol9.entity.ConfirmationStatus;
+import com.example.obligatorio_arbol9.entity.GraphChangeType;
+import com.example.obligatorio_arbol9.entity.OutboxEventType;
 import com.example.obligatorio_arbol9.entity.User;
+import com.example.obligatorio_arbol9.repository.RelationshipRepository;
 import com.example.obligatorio_arbol9.repository.UserRepository;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,6 +22,24 @@ public class UserService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private RelationshipRepository relationshipRepository;
+
+    @Autowired
+    private FamilyStatsService familyStatsService;
+
+    @Autowired
+    private FamilyGraphService familyGraphService;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private TreeEventService treeEventService;
+
+    @Autowired
+    private GraphIntegrityService graphIntegrityService;
+
     // Registro de usuario
     @Transactional
     public User registerUser(UserDTO userDTO) {
@@ -48,7 +69,11 @@ public class UserService {
             // Si es menor de edad, necesita confirmación de un progenitor o familiar de hasta segundo grado
         }
 
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        familyStatsService.registrarNuevaFamilia(saved);
+        familyGraphService.registrar(GraphChangeType.NODO_AGREGADO, saved.getId(), null);
+        outboxService.publicar(OutboxEventType.USUARIO_CREADO, saved.getId(), null);
+        return saved;
     }
 
     // Método para confirmar el registro de un usuario
@@ -64,13 +89,23 @@ public class UserService {
             // Verificar si el confirmador es elegible
             if (isEligibleConfirmer(user, confirmer)) {
                 // Agregar el confirmador al conjunto 'confirmedBy'
-                user.getConfirmedBy().add(confirmer);
+                if (user.getConfirmedBy().add(confirmer)) {
+                    familyGraphService.registrar(GraphChangeType.CONFIRMACION_AGREGADA, user.getId(), confirmer.getId());
+                }
                 userRepository.save(user);
 
                 // Verificar si se cumplen las condiciones de confirmación
-                if (shouldConfirm(user)) {
+                if (user.getConfirmationStatus() != ConfirmationStatus.CONFIRMED && shouldConfirm(user)) {
+                    FamilyStatsService.Aporte anterior = FamilyStatsService.Aporte.of(user);
                     user.setConfirmationStatus(ConfirmationStatus.CONFIRMED);
                     userRepository.save(user);
+                    familyStatsService.miembroActualizado(user, anterior);
+                    outboxService.publicar(OutboxEventType.USUARIO_ACTUALIZADO, user.getId(), null);
+                    treeEventService.publicar(user.getFamiliaId(), TreeChangeEvent.builder()
+                            .tipo(TreeChangeEvent.Tipo.CONFIRMACION_CAMBIADA)
+                            .id(user.getId())
+                            .confirmationStatus(user.getConfirmationStatus())
+                            .build());
                 }
             } else {
                 throw new RuntimeException("El usuario que confirma no es elegible.");
@@ -91,11 +126,10 @@ public class UserService {
     private boolean isEligibleConfirmer(User user, User confirmer) {
         if (user.getFechaFallecimiento() != null) {
             // Si está fallecido, el confirmador debe ser un familiar directo
-            Set<User> directFamily = new HashSet<>();
-            directFamily.addAll(user.getPadres());
-            directFamily.addAll(user.getHijos());
-            directFamily.addAll(user.getConyuges());
-            return directFamily.contains(confirmer);
+            FamilyGraph.Vecinos directFamily = familyGraphService.getGraph().vecinos(user.getId());
+            return FamilyGraph.incluye(directFamily.padres(), confirmer.getId())
+                    || FamilyGraph.incluye(directFamily.hijos(), confirmer.getId())
+                    || FamilyGraph.incluye(directFamily.conyuges(), confirmer.getId());
         } else if (isAdult(user)) {
             // Si es mayor de edad y no está fallecido, el propio usuario puede confirmar
             return user.equals(confirmer);
@@ -105,39 +139,9 @@ public class UserService {
         }
     }
 
-    // Método para verificar si el confirmador está dentro del grado permitido
+    // Método para verificar si el confirmador está dentro del grado permitido (BFS sobre el grafo en memoria)
     private boolean isWithinDegree(User user, User confirmer, int maxDegree) {
-        if (user.equals(confirmer)) {
-            return true;
-        }
-        Set<User> visited = new HashSet<>();
-        Queue<User> queue = new LinkedList<>();
-        queue.add(user);
-        visited.add(user);
-        int degree = 0;
-
-        while (!queue.isEmpty() && degree < maxDegree) {
-            int size = queue.size();
-            degree++;
-            for (int i = 0; i < size; i++) {
-                User current = queue.poll();
-                Set<User> relatives = new HashSet<>();
-                relatives.addAll(current.getPadres());
-                relatives.addAll(current.getHijos());
-                relatives.addAll(current.getConyuges());
-
-                for (User relative : relatives) {
-                    if (relative.equals(confirmer)) {
-                        return true;
-                    }
-                    if (!visited.contains(relative)) {
-                        visited.add(relative);
-                        queue.add(relative);
-                    }
-                }
-            }
-        }
-        return false;
+        return familyGraphService.getGraph().alcanzables(user.getId(), maxDegree).contains(confirmer.getId());
     }
 
     private boolean shouldConfirm(User user) {
@@ -156,13 +160,23 @@ public class UserService {
     }
 
     // Completar datos del usuario
+    @Transactional
     public User updateUser(Long userId, UserDTO userDTO) {
         Optional<User> optionalUser = userRepository.findById(userId);
         if (optionalUser.isPresent()) {
             User user = optionalUser.get();
+            FamilyStatsService.Aporte anterior = FamilyStatsService.Aporte.of(user);
             user.setNombre(userDTO.getNombre());
             user.setFechaNacimiento(userDTO.getFechaNacimiento());
             user.setFechaFallecimiento(userDTO.getFechaFallecimiento());
+            graphIntegrityService.validarFechas(user);
+            familyStatsService.miembroActualizado(user, anterior);
+            outboxService.publicar(OutboxEventType.USUARIO_ACTUALIZADO, user.getId(), null);
+            treeEventService.publicar(user.getFamiliaId(), TreeChangeEvent.builder()
+                    .tipo(TreeChangeEvent.Tipo.NODO_ACTUALIZADO)
+                    .id(user.getId())
+                    .nodo(toSummary(user))
+                    .build());
             return userRepository.save(user);
         } else {
             throw new RuntimeException("Usuario no encontrado");
@@ -201,16 +215,41 @@ public class UserService {
 
             // Establecer relaciones bidireccionales
             if (relationship.equalsIgnoreCase("antecesor")) {
+                graphIntegrityService.validarNuevoPadre(user, familyMember);
                 familyMember.getHijos().add(user);
                 user.getPadres().add(familyMember);
             } else if (relationship.equalsIgnoreCase("sucesor")) {
+                graphIntegrityService.validarNuevoPadre(familyMember, user);
                 familyMember.getPadres().add(user);
                 user.getHijos().add(familyMember);
             }
 
+            familyStatsService.miembroAgregado(user.getFamiliaId(), familyMember);
+
             // Guardar los cambios
             userRepository.save(familyMember);
             userRepository.save(user);
+
+            familyGraphService.registrar(GraphChangeType.NODO_AGREGADO, familyMember.getId(), null);
+            if (relationship.equalsIgnoreCase("antecesor")) {
+                familyGraphService.registrar(GraphChangeType.PADRE_AGREGADO, user.getId(), familyMember.getId());
+            } else {
+                familyGraphService.registrar(GraphChangeType.PADRE_AGREGADO, familyMember.getId(), user.getId());
+            }
+            outboxService.publicar(OutboxEventType.RELACION_AGREGADA, user.getId(), familyMember.getId());
+            boolean esAntecesor = relationship.equalsIgnoreCase("antecesor");
+            treeEventService.publicar(user.getFamiliaId(),
+                    TreeChangeEvent.builder()
+                            .tipo(TreeChangeEvent.Tipo.NODO_AGREGADO)
+                            .id(familyMember.getId())
+                            .nodo(toSummary(familyMember))
+                            .build(),
+                    TreeChangeEvent.builder()
+                            .tipo(TreeChangeEvent.Tipo.ARISTA_AGREGADA)
+                            .relacion(TreeChangeEvent.Relacion.PADRE)
+                            .desdeId(esAntecesor ? user.getId() : familyMember.getId())
+                            .hastaId(esAntecesor ? familyMember.getId() : user.getId())
+                            .build());
         } else {
             throw new RuntimeException("Usuario no encontrado");
         }
@@ -238,11 +277,27 @@ public class UserService {
                     .confirmationStatus(ConfirmationStatus.PENDING)
                     .build();
 
-            user.getConyuges().add(spouse);
-            spouse.getConyuges().add(user);
+            user.agregarConyuge(spouse);
+            familyStatsService.miembroAgregado(user.getFamiliaId(), spouse);
 
             userRepository.save(spouse);
             userRepository.save(user);
+
+            familyGraphService.registrar(GraphChangeType.NODO_AGREGADO, spouse.getId(), null);
+            familyGraphService.registrar(GraphChangeType.CONYUGE_AGREGADO, user.getId(), spouse.getId());
+            outboxService.publicar(OutboxEventType.RELACION_AGREGADA, user.getId(), spouse.getId());
+            treeEventService.publicar(user.getFamiliaId(),
+                    TreeChangeEvent.builder()
+                            .tipo(TreeChangeEvent.Tipo.NODO_AGREGADO)
+                            .id(spouse.getId())
+                            .nodo(toSummary(spouse))
+                            .build(),
+                    TreeChangeEvent.builder()
+                            .tipo(TreeChangeEvent.Tipo.ARISTA_AGREGADA)
+                            .relacion(TreeChangeEvent.Relacion.CONYUGE)
+                            .desdeId(user.getId())
+                            .hastaId(spouse.getId())
+                            .build());
         } else {
             throw new RuntimeException("Usuario no encontrado");
         }
@@ -255,43 +310,39 @@ public class UserService {
         Optional<User> optionalUser = userRepository.findById(userId);
         if (optionalUser.isPresent()) {
             User user = optionalUser.get();
-
-            // Eliminar relaciones con padres
-            Set<User> padres = new HashSet<>(user.getPadres());
-            for (User parent : padres) {
-                parent.getHijos().remove(user);
-                user.getPadres().remove(parent);
-            }
-
-            // Eliminar relaciones con hijos
-            Set<User> hijos = new HashSet<>(user.getHijos());
-            for (User child : hijos) {
-                child.getPadres().remove(user);
-                user.getHijos().remove(child);
+            familyStatsService.miembroEliminado(user);
+            outboxService.publicar(OutboxEventType.USUARIO_ELIMINADO, userId, null);
+
+            // Cada arista quitada se avisa a los clientes antes que el nodo
+            List<TreeChangeEvent> eventos = new ArrayList<>();
+            for (RelationshipRepository.Edge arista : relationshipRepository.findEdgesOf(List.of(userId))) {
+                switch (arista.getTipo()) {
+                    case PADRE -> eventos.add(aristaQuitada(TreeChangeEvent.Relacion.PADRE, arista.getFromId(), arista.getToId()));
+                    case CONYUGE -> eventos.add(aristaQuitada(TreeChangeEvent.Relacion.CONYUGE, arista.getFromId(), arista.getToId()));
+                    case CONFIRMACION -> {
+                    }
+                }
             }
 
-            // Eliminar relaciones con cónyuges
-            Set<User> conyuges = new HashSet<>(user.getConyuges());
-            for (User spouse : conyuges) {
-                spouse.getConyuges().remove(user);
-                user.getConyuges().remove(spouse);
-            }
+            // Eliminar todas sus relaciones (padres, hijos, cónyuges y confirmaciones) con una sola sentencia
+            relationshipRepository.deleteAllOf(userId);
 
             // Finalmente, borrar el usuario
             userRepository.delete(user);
+            familyGraphService.registrar(GraphChangeType.NODO_ELIMINADO, userId, null);
+            eventos.add(TreeChangeEvent.builder()
+                    .tipo(TreeChangeEvent.Tipo.NODO_ELIMINADO)
+                    .id(userId)
+                    .build());
+            treeEventService.publicar(user.getFamiliaId(), eventos.toArray(new TreeChangeEvent[0]));
         } else {
             throw new RuntimeException("Usuario no encontrado");
         }
     }
 
-    // Obtener árbol genealógico
-    public User getGenealogyTree(Long userId) {
-        Optional<User> optionalUser = userRepository.findById(userId);
-        if (optionalUser.isPresent()) {
-            return optionalUser.get();
-        } else {
-            throw new RuntimeException("Usuario no encontrado");
-        }
+    // Obtener árbol genealógico completo (toda la familia alcanzable)
+    public UserTreeDTO getGenealogyTree(Long userId) {
+        return getGenealogyTree(userId, Integer.MAX_VALUE);
     }
 
     // Obtener tdoos los Usuarios
@@ -309,15 +360,15 @@ public class UserService {
                 .collect(Collectors.toList());
     }
 
-    //Obtener Usuario por nombre
-    public User getGenealogyTreeByName(String nombre) {
+    //Obtener árbol genealógico por nombre
+    public UserTreeDTO getGenealogyTreeByName(String nombre) {
         List<User> users = userRepository.findAllByNombre(nombre);
         if (users.isEmpty()) {
             throw new RuntimeException("Usuario no encontrado");
         } else if (users.size() > 1) {
             throw new RuntimeException("Se encontraron múltiples usuarios con ese nombre");
         } else {
-            return users.get(0);
+            return getGenealogyTree(users.get(0).getId());
         }
     }
 
@@ -345,22 +396,27 @@ public class UserService {
 
 
     //Construye el árbol genealógico del usuario hasta un grado de profundidad específico.
+    //La forma sale del grafo en memoria y los datos de las personas de una sola consulta.
     public UserTreeDTO getGenealogyTree(Long userId, int depth) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+        FamilyGraph graph = familyGraphService.getGraph();
+        Map<Long, User> usuarios = userRepository.findAllById(graph.alcanzables(userId, Math.max(depth, 0))).stream()
+                .collect(Collectors.toMap(User::getId, u -> u));
+        if (!usuarios.containsKey(userId)) {
+            throw new RuntimeException("Usuario no encontrado");
+        }
 
-        return buildUserTree(user, depth, new HashSet<>());
+        return buildUserTree(userId, depth, new HashSet<>(), graph, usuarios);
     }
 
 
     //Método recursivo para construir el árbol genealógico.
-    private UserTreeDTO buildUserTree(User user, int depth, Set<Long> visited) {
-        if (user == null || depth < 0 || visited.contains(user.getId())) {
+    private UserTreeDTO buildUserTree(long id, int depth, Set<Long> visited, FamilyGraph graph, Map<Long, User> usuarios) {
+        User user = usuarios.get(id);
+        if (user == null || depth < 0 || !visited.add(id)) {
             return null;
         }
 
-        visited.add(user.getId());
-
+        FamilyGraph.Vecinos vecinos = graph.vecinos(id);
         return UserTreeDTO.builder()
                 .id(user.getId())
                 .nombre(user.getNombre())
@@ -368,16 +424,16 @@ public class UserService {
                 .fechaFallecimiento(user.getFechaFallecimiento())
                 .email(user.getEmail())
                 .confirmationStatus(user.getConfirmationStatus())
-                .padres(user.getPadres().stream()
-                        .map(parent -> buildUserTree(parent, depth - 1, visited))
+                .padres(Arrays.stream(vecinos.padres())
+                        .mapToObj(parent -> buildUserTree(parent, depth - 1, visited, graph, usuarios))
                         .filter(Objects::nonNull)
                         .collect(Collectors.toList()))
-                .hijos(user.getHijos().stream()
-                        .map(child -> buildUserTree(child, depth - 1, visited))
+                .hijos(Arrays.stream(vecinos.hijos())
+                        .mapToObj(child -> buildUserTree(child, depth - 1, visited, graph, usuarios))
                         .filter(Objects::nonNull)
                         .collect(Collectors.toList()))
-                .conyuges(user.getConyuges().stream()
-                        .map(spouse -> buildUserTree(spouse, depth - 1, visited))
+                .conyuges(Arrays.stream(vecinos.conyuges())
+                        .mapToObj(spouse -> buildUserTree(spouse, depth - 1, visited, graph, usuarios))
                         .filter(Objects::nonNull)
                         .collect(Collectors.toList()))
                 .build();
@@ -389,9 +445,10 @@ public class UserService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
 
-        // Obtener todos los familiares en el árbol genealógico
-        Set<User> familyTree = new HashSet<>();
-        traverseFamilyTree(user, 10, familyTree); // Asumiendo un límite de 10 grados para evitar ciclos
+        // Obtener todos los familiares en el árbol genealógico, recorriendo el grafo en memoria
+        // y cargando los usuarios en una sola consulta
+        Set<Long> familyIds = familyGraphService.getGraph().alcanzables(user.getId(), 10); // Asumiendo un límite de 10 grados para evitar ciclos
+        List<User> familyTree = userRepository.findAllById(familyIds);
 
         // Filtrar aquellos que están pendientes de confirmación
         List<PendingConfirmationDTO> pendingConfirmations = familyTree.stream()
@@ -411,25 +468,24 @@ public class UserService {
     }
 
 
-    //Método recursivo para recorrer el árbol genealógico.
-    private void traverseFamilyTree(User user, int depth, Set<User> familyTree) {
-        if (user == null || depth < 0 || familyTree.contains(user)) {
-            return;
-        }
-
-        familyTree.add(user);
-
-        for (User parent : user.getPadres()) {
-            traverseFamilyTree(parent, depth - 1, familyTree);
-        }
-
-        for (User child : user.getHijos()) {
-            traverseFamilyTree(child, depth - 1, familyTree);
-        }
+    private static TreeChangeEvent aristaQuitada(TreeChangeEvent.Relacion relacion, Long desdeId, Long hastaId) {
+        return TreeChangeEvent.builder()
+                .tipo(TreeChangeEvent.Tipo.ARISTA_QUITADA)
+                .relacion(relacion)
+                .desdeId(desdeId)
+                .hastaId(hastaId)
+                .build();
+    }
 
-        for (User spouse : user.getConyuges()) {
-            traverseFamilyTree(spouse, depth - 1, familyTree);
-        }
+    private UserSummaryDTO toSummary(User user) {
+        return UserSummaryDTO.builder()
+                .id(user.getId())
+                .nombre(user.getNombre())
+                .fechaNacimiento(user.getFechaNacimiento())
+                .fechaFallecimiento(user.getFechaFallecimiento())
+                .email(user.getEmail())
+                .confirmationStatus(user.getConfirmationStatus())
+                .build();
     }
 
 
@@ -452,41 +508,42 @@ public class UserService {
         User targetUser = userRepository.findByNombre(targetName)
                 .orElseThrow(() -> new RuntimeException("Usuario objetivo no encontrado"));
 
-        // Realizar BFS para encontrar el camino
-        Queue<User> queue = new LinkedList<>();
+        // Realizar BFS sobre el grafo en memoria para encontrar el camino
+        FamilyGraph graph = familyGraphService.getGraph();
+        Queue<Long> queue = new LinkedList<>();
         Map<Long, String> relationshipMap = new HashMap<>();
         Map<Long, String> kinshipMap = new HashMap<>();
         Set<Long> visited = new HashSet<>();
 
-        queue.add(startUser);
+        queue.add(startUser.getId());
         visited.add(startUser.getId());
         relationshipMap.put(startUser.getId(), "Tú");
         kinshipMap.put(startUser.getId(), "Self");
 
         while (!queue.isEmpty()) {
-            User currentUser = queue.poll();
+            Long currentId = queue.poll();
 
-            if (currentUser.equals(targetUser)) {
-                return interpretKinship(kinshipMap.get(currentUser.getId()));
+            if (currentId.equals(targetUser.getId())) {
+                return interpretKinship(kinshipMap.get(currentId));
             }
 
             // Explorar familiares
-            exploreRelative(currentUser.getPadres(), currentUser, "Padre/Madre", "Parent", queue, visited, relationshipMap, kinshipMap);
-            exploreRelative(currentUser.getHijos(), currentUser, "Hijo/Hija", "Child", queue, visited, relationshipMap, kinshipMap);
-            exploreRelative(currentUser.getConyuges(), currentUser, "Cónyuge", "Spouse", queue, visited, relationshipMap, kinshipMap);
+            FamilyGraph.Vecinos vecinos = graph.vecinos(currentId);
+            exploreRelative(vecinos.padres(), currentId, "Padre/Madre", "Parent", queue, visited, relationshipMap, kinshipMap);
+            exploreRelative(vecinos.hijos(), currentId, "Hijo/Hija", "Child", queue, visited, relationshipMap, kinshipMap);
+            exploreRelative(vecinos.conyuges(), currentId, "Cónyuge", "Spouse", queue, visited, relationshipMap, kinshipMap);
         }
 
         return "No se encontró parentesco con el usuario especificado.";
     }
 
-    private void exploreRelative(Set<User> relatives, User currentUser, String relation, String kinshipCode,
-                                 Queue<User> queue, Set<Long> visited, Map<Long, String> relationshipMap, Map<Long, String> kinshipMap) {
-        for (User relative : relatives) {
-            if (!visited.contains(relative.getId())) {
-                visited.add(relative.getId());
+    private void exploreRelative(long[] relatives, Long currentId, String relation, String kinshipCode,
+                                 Queue<Long> queue, Set<Long> visited, Map<Long, String> relationshipMap, Map<Long, String> kinshipMap) {
+        for (long relative : relatives) {
+            if (visited.add(relative)) {
                 queue.add(relative);
-                relationshipMap.put(relative.getId(), relationshipMap.get(currentUser.getId()) + " -> " + relation);
-                kinshipMap.put(relative.getId(), kinshipMap.get(currentUser.getId()) + "-" + kinshipCode);
+                relationshipMap.put(relative, relationshipMap.get(currentId) + " -> " + relation);
+                kinshipMap.put(relative, kinshipMap.get(currentId) + "-" + kinshipCode);
             }
         }
     }
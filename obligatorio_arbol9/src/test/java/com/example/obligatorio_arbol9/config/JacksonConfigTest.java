@@ -0,0 +1,135 @@
+package com.example.obligatorio_arbol9.config;
+
+import com.example.obligatorio_arbol9.controller.UserController;
+import com.example.obligatorio_arbol9.dto.TreeChangeEvent;
+import com.example.obligatorio_arbol9.dto.UserTreeDTO;
+import com.example.obligatorio_arbol9.service.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// Negociación de formato con los convertidores reales: Smile y CBOR sólo cuando se piden,
+// JSON para los clientes que no piden nada y para los eventos SSE
+@WebMvcTest(UserController.class)
+@Import({JacksonConfig.class, TreeEventService.class})
+class JacksonConfigTest {
+
+    private static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+    private static final MediaType CBOR = MediaType.parseMediaType("application/cbor");
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private TreeEventService treeEventService;
+
+    @MockBean
+    private UserService userService;
+    @MockBean
+    private FamilyStatsService familyStatsService;
+    @MockBean
+    private ReadModelService readModelService;
+    @MockBean
+    private ExpandService expandService;
+    @MockBean
+    private NeighbourhoodService neighbourhoodService;
+    @MockBean
+    private DuplicateDetectionService duplicateDetectionService;
+    @MockBean
+    private UserMergeService userMergeService;
+    @MockBean
+    private GraphIntegrityService graphIntegrityService;
+    @MockBean
+    private RequestCoalescer requestCoalescer;
+    @MockBean
+    private TreeLayoutService treeLayoutService;
+
+    @BeforeEach
+    void preparar() {
+        when(userService.getGenealogyTree(1L)).thenReturn(UserTreeDTO.builder()
+                .id(1L)
+                .nombre("Ana")
+                .padres(List.of())
+                .hijos(List.of())
+                .conyuges(List.of())
+                .build());
+    }
+
+    private UserTreeDTO leer(byte[] cuerpo, ObjectMapper mapper) throws Exception {
+        return mapper.readValue(cuerpo, UserTreeDTO.class);
+    }
+
+    @Test
+    void conAcceptSmileElCuerpoEsSmile() throws Exception {
+        byte[] cuerpo = mvc.perform(get("/api/users/1/tree").accept(SMILE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(SMILE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // Todo documento Smile empieza con ":)\n"
+        assertThat(new String(cuerpo, 0, 3, StandardCharsets.ISO_8859_1)).isEqualTo(":)\n");
+        assertThat(leer(cuerpo, new ObjectMapper(new SmileFactory())).getNombre()).isEqualTo("Ana");
+    }
+
+    @Test
+    void conAcceptCborElCuerpoEsCbor() throws Exception {
+        byte[] cuerpo = mvc.perform(get("/api/users/1/tree").accept(CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertThat(cuerpo[0]).isNotEqualTo((byte) '{');
+        assertThat(leer(cuerpo, new ObjectMapper(new CBORFactory())).getNombre()).isEqualTo("Ana");
+    }
+
+    @Test
+    void sinAcceptOConCualquierFormatoSigueSiendoJson() throws Exception {
+        mvc.perform(get("/api/users/1/tree"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.nombre").value("Ana"));
+
+        mvc.perform(get("/api/users/1/tree").accept(MediaType.ALL))
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+
+        // Un navegador pide HTML primero; lo que recibe igual es JSON
+        mvc.perform(get("/api/users/1/tree").header("Accept", "text/html,application/xhtml+xml,*/*;q=0.8"))
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    void losEventosSseSeEnvianComoJson() throws Exception {
+        when(familyStatsService.getFamiliaId(1L)).thenReturn(7L);
+        MvcResult resultado = mvc.perform(get("/api/users/1/family-events").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        treeEventService.publicar(7L, TreeChangeEvent.builder().tipo(TreeChangeEvent.Tipo.NODO_ELIMINADO).id(5L).build());
+
+        String cuerpo = "";
+        // El evento termina con una línea en blanco
+        for (int i = 0; i < 100 && !cuerpo.endsWith("\n\n"); i++) {
+            Thread.sleep(20);
+            cuerpo = resultado.getResponse().getContentAsString();
+        }
+        assertThat(resultado.getResponse().getContentType()).startsWith(MediaType.TEXT_EVENT_STREAM_VALUE);
+        assertThat(cuerpo).contains("event:change").contains("data:{\"tipo\":\"NODO_ELIMINADO\",\"id\":5}");
+    }
+}
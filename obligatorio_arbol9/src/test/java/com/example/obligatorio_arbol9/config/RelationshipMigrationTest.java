@@ -0,0 +1,112 @@
+package com.example.obligatorio_arbol9.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Migración de las tablas de relaciones anteriores a relationship, contra una base H2 en memoria
+class RelationshipMigrationTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private RelationshipMigration migracion;
+
+    @BeforeEach
+    void crearBase() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:migracion;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE relationship (from_id BIGINT, type VARCHAR(20), to_id BIGINT, "
+                + "PRIMARY KEY (from_id, type, to_id))");
+        jdbcTemplate.execute("CREATE TABLE user_parents (user_id BIGINT, parent_id BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE user_conyuges (user_id BIGINT, conyuge_id BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE user_confirmations (user_id BIGINT, confirmed_by_id BIGINT)");
+
+        // 3 es hijo de 1 y 2; 1 y 2 casados (guardado en los dos sentidos), 4 y 5 casados en un solo sentido;
+        // 1 confirmó a 3
+        jdbcTemplate.update("INSERT INTO user_parents VALUES (3, 1), (3, 2)");
+        jdbcTemplate.update("INSERT INTO user_conyuges VALUES (1, 2), (2, 1), (5, 4)");
+        jdbcTemplate.update("INSERT INTO user_confirmations VALUES (3, 1)");
+
+        migracion = new RelationshipMigration();
+        ReflectionTestUtils.setField(migracion, "dataSource", dataSource);
+        ReflectionTestUtils.setField(migracion, "jdbcTemplate", jdbcTemplate);
+    }
+
+    @AfterEach
+    void borrarBase() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    private List<String> relaciones() {
+        return jdbcTemplate.queryForList(
+                "SELECT CONCAT(from_id, ' ', type, ' ', to_id) FROM relationship ORDER BY type, from_id, to_id",
+                String.class);
+    }
+
+    private List<String> tablas() {
+        return jdbcTemplate.queryForList(
+                "SELECT table_name FROM information_schema.tables WHERE table_schema = 'public' ORDER BY table_name",
+                String.class);
+    }
+
+    @Test
+    void copiaLasRelacionesConUnaFilaPorPareja() {
+        migracion.migrar();
+
+        assertThat(relaciones()).containsExactly(
+                "3 CONFIRMACION 1",
+                "1 CONYUGE 2",
+                "4 CONYUGE 5",
+                "3 PADRE 1",
+                "3 PADRE 2");
+    }
+
+    @Test
+    void renombraLasTablasAnterioresEnLugarDeBorrarlas() {
+        migracion.migrar();
+
+        assertThat(tablas()).containsExactly("relationship",
+                "user_confirmations_migrada", "user_conyuges_migrada", "user_parents_migrada");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_conyuges_migrada", Integer.class))
+                .isEqualTo(3);
+    }
+
+    @Test
+    void migrarDeNuevoNoHaceNada() {
+        migracion.migrar();
+        List<String> despuesDeLaPrimera = relaciones();
+
+        migracion.migrar();
+
+        assertThat(relaciones()).isEqualTo(despuesDeLaPrimera);
+        assertThat(tablas()).contains("user_parents_migrada").doesNotContain("user_parents");
+    }
+
+    @Test
+    void siUnaMigracionSeCortoALaMitadTerminaSinDuplicar() {
+        // Una corrida anterior ya copió las filas de padres pero no llegó a renombrar la tabla
+        jdbcTemplate.update("INSERT INTO relationship (from_id, to_id, type) VALUES (3, 1, 'PADRE')");
+
+        migracion.migrar();
+
+        assertThat(relaciones()).filteredOn(r -> r.contains("PADRE")).containsExactly("3 PADRE 1", "3 PADRE 2");
+        assertThat(tablas()).doesNotContain("user_parents");
+    }
+
+    @Test
+    void conDropLegacyBorraLasTablasAnteriores() {
+        ReflectionTestUtils.setField(migracion, "borrarTablasAnteriores", true);
+
+        migracion.migrar();
+
+        assertThat(tablas()).containsExactly("relationship");
+        assertThat(relaciones()).hasSize(5);
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.dto.DuplicateScanStatusDTO;
+import com.example.obligatorio_arbol9.repository.DuplicateCandidateRepository;
+import com.example.obligatorio_arbol9.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Escaneo de duplicados contra una base H2 en memoria: bloqueo, puntaje y guardado de candidatos
+class DuplicateDetectionServiceTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private UserRepository userRepository;
+    private DuplicateDetectionService servicio;
+    private final AtomicLong ids = new AtomicLong();
+
+    @BeforeEach
+    void crearBase() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:duplicados;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT PRIMARY KEY, nombre VARCHAR(255), "
+                + "fecha_nacimiento DATE, fecha_fallecimiento DATE)");
+        jdbcTemplate.execute("CREATE TABLE duplicate_candidates (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                + "useraid BIGINT NOT NULL, userbid BIGINT NOT NULL, score DOUBLE, estado VARCHAR(20), "
+                + "detectado TIMESTAMP, UNIQUE (useraid, userbid))");
+
+        userRepository = mock(UserRepository.class);
+        when(userRepository.count()).thenAnswer(invocacion ->
+                jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class));
+
+        servicio = new DuplicateDetectionService();
+        ReflectionTestUtils.setField(servicio, "dataSource", dataSource);
+        ReflectionTestUtils.setField(servicio, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(servicio, "userRepository", userRepository);
+        ReflectionTestUtils.setField(servicio, "duplicateCandidateRepository", mock(DuplicateCandidateRepository.class));
+        servicio.init();
+    }
+
+    @AfterEach
+    void borrarBase() {
+        servicio.cerrar();
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    private long persona(String nombre, String nacimiento, String fallecimiento) {
+        long id = ids.incrementAndGet();
+        jdbcTemplate.update("INSERT INTO users (id, nombre, fecha_nacimiento, fecha_fallecimiento) VALUES (?, ?, ?, ?)",
+                id, nombre, nacimiento, fallecimiento);
+        return id;
+    }
+
+    private DuplicateScanStatusDTO escanear() throws InterruptedException {
+        servicio.iniciarEscaneo();
+        for (int i = 0; i < 200 && servicio.getEstado().isEnCurso(); i++) {
+            Thread.sleep(50);
+        }
+        DuplicateScanStatusDTO estado = servicio.getEstado();
+        assertThat(estado.isEnCurso()).isFalse();
+        return estado;
+    }
+
+    private List<List<Long>> candidatos() {
+        return jdbcTemplate.query("SELECT useraid, userbid FROM duplicate_candidates ORDER BY useraid, userbid",
+                (rs, i) -> List.of(rs.getLong(1), rs.getLong(2)));
+    }
+
+    @Test
+    void encuentraUnApellidoMalEscritoConLaMismaFecha() throws InterruptedException {
+        long vazquez = persona("Juan Vázquez", "1950-04-02", null);
+        long basques = persona("Juan Basques", "1950-04-02", null);
+        // Mismo nombre pero otro año: no comparte bloque
+        persona("Juan Vázquez", "1982-11-20", null);
+
+        DuplicateScanStatusDTO estado = escanear();
+
+        assertThat(estado.getError()).isNull();
+        assertThat(candidatos()).containsExactly(List.of(vazquez, basques));
+        assertThat(estado.getCandidatosNuevos()).isEqualTo(1);
+    }
+
+    @Test
+    void elOrdenDeLasPalabrasYLasTildesNoImportan() throws InterruptedException {
+        long a = persona("María del Carmen Pérez", "1940-01-10", "2010-05-05");
+        long b = persona("Perez Maria Carmen", "1940-01-10", null);
+
+        escanear();
+
+        assertThat(candidatos()).containsExactly(List.of(a, b));
+    }
+
+    @Test
+    void compartirSoloUnaPalabraYElAnioNoAlcanza() throws InterruptedException {
+        // Mismo bloque (apellido y año) pero nombres y fechas distintos: el puntaje queda bajo el umbral
+        persona("Ana Rodríguez", "1970-02-01", null);
+        persona("Pedro Rodríguez", "1970-09-15", "2001-01-01");
+
+        DuplicateScanStatusDTO estado = escanear();
+
+        assertThat(estado.getBloquesCandidatos()).isEqualTo(1);
+        assertThat(estado.getParesComparados()).isEqualTo(1);
+        assertThat(candidatos()).isEmpty();
+    }
+
+    @Test
+    void reescanearNoDuplicaNiReviveCandidatos() throws InterruptedException {
+        persona("Juan Vázquez", "1950-04-02", null);
+        persona("Juan Basques", "1950-04-02", null);
+        escanear();
+        jdbcTemplate.update("UPDATE duplicate_candidates SET estado = 'DESCARTADO'");
+
+        DuplicateScanStatusDTO estado = escanear();
+
+        assertThat(estado.getCandidatosNuevos()).isZero();
+        assertThat(jdbcTemplate.queryForList("SELECT estado FROM duplicate_candidates", String.class))
+                .containsExactly("DESCARTADO");
+    }
+
+    @Test
+    void unErrorQueNoEsRuntimeExceptionNoDejaElEscaneoEnCurso() throws InterruptedException {
+        when(userRepository.count()).thenThrow(new Error("simulado"));
+
+        DuplicateScanStatusDTO estado = escanear();
+        assertThat(estado.getError()).isEqualTo("Escaneo interrumpido");
+        assertThat(estado.getFin()).isNotNull();
+
+        // Se puede volver a escanear
+        doReturn(0L).when(userRepository).count();
+        assertThat(escanear().getError()).isNull();
+    }
+}
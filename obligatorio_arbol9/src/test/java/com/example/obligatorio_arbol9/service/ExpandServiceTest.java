@@ -0,0 +1,152 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.dto.ExpandNodeDTO;
+import com.example.obligatorio_arbol9.dto.ExpandRequest;
+import com.example.obligatorio_arbol9.dto.ExpandResponseDTO;
+import com.example.obligatorio_arbol9.entity.GraphChange;
+import com.example.obligatorio_arbol9.entity.GraphChangeType;
+import com.example.obligatorio_arbol9.entity.User;
+import com.example.obligatorio_arbol9.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.*;
+
+// Expansión paginada sobre un grafo en memoria armado a mano: 1 tiene los hijos 10 a 16,
+// 2 tiene los hijos 20 a 22 y 1 y 2 son cónyuges
+class ExpandServiceTest {
+
+    private final FamilyGraph graph = new FamilyGraph();
+    private UserRepository userRepository;
+    private ExpandService servicio;
+
+    @BeforeEach
+    void crearGrafo() {
+        nodo(1);
+        nodo(2);
+        LongStream.rangeClosed(10, 16).forEach(hijo -> hijo(hijo, 1));
+        LongStream.rangeClosed(20, 22).forEach(hijo -> hijo(hijo, 2));
+        graph.aplicar(GraphChange.builder().tipo(GraphChangeType.CONYUGE_AGREGADO).desdeId(1L).hastaId(2L).build());
+
+        FamilyGraphService familyGraphService = mock(FamilyGraphService.class);
+        when(familyGraphService.getGraph()).thenReturn(graph);
+        userRepository = mock(UserRepository.class);
+        when(userRepository.findAllById(anyIterable())).thenAnswer(invocacion -> {
+            Collection<Long> ids = invocacion.getArgument(0);
+            return ids.stream()
+                    .filter(graph::contiene)
+                    .map(id -> User.builder().id(id).nombre("Persona " + id).build())
+                    .toList();
+        });
+
+        servicio = new ExpandService();
+        ReflectionTestUtils.setField(servicio, "familyGraphService", familyGraphService);
+        ReflectionTestUtils.setField(servicio, "userRepository", userRepository);
+    }
+
+    private void nodo(long id) {
+        graph.aplicar(GraphChange.builder().tipo(GraphChangeType.NODO_AGREGADO).desdeId(id).build());
+    }
+
+    private void hijo(long hijo, long padre) {
+        nodo(hijo);
+        graph.aplicar(GraphChange.builder().tipo(GraphChangeType.PADRE_AGREGADO).desdeId(hijo).hastaId(padre).build());
+    }
+
+    private static List<Long> ids(ExpandResponseDTO pagina) {
+        return pagina.getNodos().stream().map(ExpandNodeDTO::getId).toList();
+    }
+
+    @Test
+    void elCursorRecorreTodasLasPaginasSinRepetirNiSaltear() {
+        ExpandResponseDTO primera = servicio.expand(1L, "sucesor", null, 3);
+        assertThat(ids(primera)).containsExactly(10L, 11L, 12L);
+        assertThat(primera.getTotal()).isEqualTo(7);
+        assertThat(primera.isHasMore()).isTrue();
+        assertThat(primera.getNextCursor()).isEqualTo("12");
+
+        ExpandResponseDTO segunda = servicio.expand(1L, "sucesor", primera.getNextCursor(), 3);
+        assertThat(ids(segunda)).containsExactly(13L, 14L, 15L);
+        assertThat(segunda.isHasMore()).isTrue();
+
+        ExpandResponseDTO ultima = servicio.expand(1L, "sucesor", segunda.getNextCursor(), 3);
+        assertThat(ids(ultima)).containsExactly(16L);
+        assertThat(ultima.isHasMore()).isFalse();
+        assertThat(ultima.getNextCursor()).isNull();
+    }
+
+    @Test
+    void unaPaginaQueTerminaJustoEnElUltimoNoTieneMas() {
+        ExpandResponseDTO pagina = servicio.expand(2L, "sucesor", null, 3);
+
+        assertThat(ids(pagina)).containsExactly(20L, 21L, 22L);
+        assertThat(pagina.isHasMore()).isFalse();
+        assertThat(pagina.getNextCursor()).isNull();
+    }
+
+    @Test
+    void unHijoNuevoEntrePaginasNoCorreLaPaginaSiguiente() {
+        ExpandResponseDTO primera = servicio.expand(1L, "sucesor", null, 3);
+        // Con un desplazamiento numérico, un ID menor al cursor haría repetir el 12
+        hijo(5, 1);
+
+        ExpandResponseDTO segunda = servicio.expand(1L, "sucesor", primera.getNextCursor(), 3);
+
+        assertThat(ids(segunda)).containsExactly(13L, 14L, 15L);
+        assertThat(segunda.getTotal()).isEqualTo(8);
+    }
+
+    @Test
+    void losNodosTraenCuantosVecinosTienenParaSeguirExpandiendo() {
+        ExpandResponseDTO conyuges = servicio.expand(1L, "conyuge", null, null);
+
+        assertThat(conyuges.getNodos()).singleElement().satisfies(conyuge -> {
+            assertThat(conyuge.getId()).isEqualTo(2L);
+            assertThat(conyuge.getCantidadHijos()).isEqualTo(3);
+            assertThat(conyuge.getCantidadConyuges()).isEqualTo(1);
+            assertThat(conyuge.isTieneSucesores()).isTrue();
+            assertThat(conyuge.isTieneAntecesores()).isFalse();
+        });
+        assertThat(ids(servicio.expand(10L, "antecesor", null, null))).containsExactly(1L);
+    }
+
+    @Test
+    void elPedidoPorLotesSigueElCursorDeCadaNodoConUnaSolaConsulta() {
+        clearInvocations(userRepository);
+
+        List<ExpandResponseDTO> respuestas = servicio.expandAll(List.of(1L, 2L), "sucesor", Map.of(1L, "12"), 2);
+
+        assertThat(respuestas).extracting(ExpandResponseDTO::getId).containsExactly(1L, 2L);
+        assertThat(ids(respuestas.get(0))).containsExactly(13L, 14L);
+        assertThat(respuestas.get(0).getNextCursor()).isEqualTo("14");
+        assertThat(ids(respuestas.get(1))).containsExactly(20L, 21L);
+        assertThat(respuestas.get(1).isHasMore()).isTrue();
+        verify(userRepository, times(1)).findAllById(anyIterable());
+
+        // Cada nodo avanza con su propio cursor hasta agotarse
+        List<ExpandResponseDTO> siguientes = servicio.expandAll(List.of(1L, 2L), "sucesor",
+                Map.of(1L, respuestas.get(0).getNextCursor(), 2L, respuestas.get(1).getNextCursor()), 2);
+        assertThat(ids(siguientes.get(0))).containsExactly(15L, 16L);
+        assertThat(siguientes.get(0).isHasMore()).isFalse();
+        assertThat(ids(siguientes.get(1))).containsExactly(22L);
+        assertThat(siguientes.get(1).isHasMore()).isFalse();
+    }
+
+    @Test
+    void rechazaPedidosInvalidos() {
+        assertThatThrownBy(() -> servicio.expand(1L, "primo", null, 3)).hasMessage("Dirección inválida");
+        assertThatThrownBy(() -> servicio.expand(1L, "sucesor", "abc", 3)).hasMessage("Cursor inválido");
+        assertThatThrownBy(() -> servicio.expand(99L, "sucesor", null, 3)).hasMessage("Usuario no encontrado");
+
+        List<Long> demasiados = LongStream.rangeClosed(1, ExpandRequest.MAXIMO_IDS + 1).boxed().toList();
+        assertThatThrownBy(() -> servicio.expandAll(demasiados, "sucesor", null, 3))
+                .hasMessageContaining("como máximo");
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.entity.GraphChange;
+import com.example.obligatorio_arbol9.entity.GraphChangeType;
+import com.example.obligatorio_arbol9.repository.GraphChangeRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+// Snapshot y registro de cambios del grafo en memoria, sin base de datos
+class FamilyGraphServiceTest {
+
+    @TempDir
+    Path directorio;
+
+    // Familia de prueba: 1 y 2 son padres de 3, 3 está casado con 4, 4 se confirmó a sí mismo y confirmó a 3
+    private static List<GraphChange> cambios() {
+        List<GraphChange> cambios = new ArrayList<>();
+        for (long id = 1; id <= 5; id++) {
+            cambios.add(cambio(GraphChangeType.NODO_AGREGADO, id, null));
+        }
+        cambios.add(cambio(GraphChangeType.PADRE_AGREGADO, 3L, 1L));
+        cambios.add(cambio(GraphChangeType.PADRE_AGREGADO, 3L, 2L));
+        cambios.add(cambio(GraphChangeType.CONYUGE_AGREGADO, 3L, 4L));
+        cambios.add(cambio(GraphChangeType.CONFIRMACION_AGREGADA, 4L, 4L));
+        cambios.add(cambio(GraphChangeType.CONFIRMACION_AGREGADA, 3L, 4L));
+        cambios.add(cambio(GraphChangeType.PADRE_AGREGADO, 5L, 3L));
+        cambios.add(cambio(GraphChangeType.NODO_ELIMINADO, 5L, null));
+        return cambios;
+    }
+
+    private static GraphChange cambio(GraphChangeType tipo, Long desdeId, Long hastaId) {
+        return GraphChange.builder().tipo(tipo).desdeId(desdeId).hastaId(hastaId).build();
+    }
+
+    // Servicio con el registro simulado: save asigna seq y findAllByOrderBySeqAsc devuelve el registro dado
+    private FamilyGraphService servicio(Path snapshot, GraphChangeRepository repositorio) {
+        FamilyGraphService servicio = new FamilyGraphService();
+        ReflectionTestUtils.setField(servicio, "graphChangeRepository", repositorio);
+        ReflectionTestUtils.setField(servicio, "jdbcTemplate", mock(JdbcTemplate.class));
+        ReflectionTestUtils.setField(servicio, "snapshotPath", snapshot.toString());
+        return servicio;
+    }
+
+    private static GraphChangeRepository repositorio(List<GraphChange> registro) {
+        GraphChangeRepository repositorio = mock(GraphChangeRepository.class);
+        AtomicLong seq = new AtomicLong();
+        when(repositorio.save(any(GraphChange.class))).thenAnswer(invocacion -> {
+            GraphChange cambio = invocacion.getArgument(0);
+            cambio.setSeq(seq.incrementAndGet());
+            return cambio;
+        });
+        when(repositorio.findAllByOrderBySeqAsc()).thenReturn(registro);
+        return repositorio;
+    }
+
+    // Vecinos como listas, para comparar grafos por contenido
+    private static Map<Long, List<List<Long>>> contenido(FamilyGraph graph) {
+        Map<Long, List<List<Long>>> contenido = new TreeMap<>();
+        graph.nodos().forEach((id, v) -> contenido.put(id, List.of(
+                lista(v.padres()), lista(v.hijos()), lista(v.conyuges()), lista(v.confirmadoPor()), lista(v.confirmo()))));
+        return contenido;
+    }
+
+    private static List<Long> lista(long[] ids) {
+        return Arrays.stream(ids).boxed().toList();
+    }
+
+    @Test
+    void reaplicarElRegistroNoCambiaElGrafo() {
+        FamilyGraph unaVez = new FamilyGraph();
+        cambios().forEach(unaVez::aplicar);
+
+        FamilyGraph dosVeces = new FamilyGraph();
+        cambios().forEach(dosVeces::aplicar);
+        cambios().forEach(dosVeces::aplicar);
+
+        assertThat(contenido(dosVeces)).isEqualTo(contenido(unaVez));
+        assertThat(unaVez.contiene(5)).isFalse();
+        assertThat(lista(unaVez.vecinos(3).padres())).containsExactly(1L, 2L);
+        assertThat(lista(unaVez.vecinos(3).hijos())).isEmpty();
+        assertThat(lista(unaVez.vecinos(4).confirmo())).containsExactly(3L, 4L);
+    }
+
+    @Test
+    void arrancarConSnapshotYRegistroSinRecortarReaplicaSinDuplicar() throws Exception {
+        Path snapshot = directorio.resolve("graph.snapshot");
+        GraphChangeRepository repositorio = repositorio(List.of());
+        FamilyGraphService original = servicio(snapshot, repositorio);
+        original.inicializar();
+        List<GraphChange> registro = cambios();
+        registro.forEach(c -> original.registrar(c.getTipo(), c.getDesdeId(), c.getHastaId()));
+        original.guardarSnapshot();
+
+        // El recorte del registro no llegó a correr: al arrancar se reaplican cambios que ya están en el snapshot
+        for (int i = 0; i < registro.size(); i++) {
+            registro.get(i).setSeq(i + 1L);
+        }
+        FamilyGraphService reiniciado = servicio(snapshot, repositorio(registro));
+        reiniciado.inicializar();
+
+        assertThat(contenido(reiniciado.getGraph())).isEqualTo(contenido(original.getGraph()));
+    }
+
+    @Test
+    void elSnapshotIdaYVueltaConservaTodasLasRelaciones() throws Exception {
+        Path snapshot = directorio.resolve("graph.snapshot");
+        FamilyGraphService original = servicio(snapshot, repositorio(List.of()));
+        original.inicializar();
+        cambios().forEach(c -> original.registrar(c.getTipo(), c.getDesdeId(), c.getHastaId()));
+
+        Set<Long> incluidos = original.guardarSnapshot();
+        assertThat(Files.exists(snapshot)).isTrue();
+        assertThat(incluidos).hasSize(cambios().size());
+
+        FamilyGraphService cargado = servicio(snapshot, repositorio(List.of()));
+        cargado.inicializar();
+
+        assertThat(contenido(cargado.getGraph())).isEqualTo(contenido(original.getGraph()));
+    }
+
+    @Test
+    void alCerrarBorraDelRegistroSoloLosCambiosDelSnapshot() {
+        Path snapshot = directorio.resolve("graph.snapshot");
+        GraphChangeRepository repositorio = repositorio(List.of());
+        FamilyGraphService servicio = servicio(snapshot, repositorio);
+        servicio.inicializar();
+        List<GraphChange> registro = cambios();
+        registro.forEach(c -> servicio.registrar(c.getTipo(), c.getDesdeId(), c.getHastaId()));
+
+        servicio.guardarAlCerrar();
+
+        List<Long> seqs = new ArrayList<>();
+        for (long seq = 1; seq <= registro.size(); seq++) {
+            seqs.add(seq);
+        }
+        verify(repositorio).deleteAllByIdInBatch(seqs);
+        verify(repositorio, times(1)).deleteAllByIdInBatch(anyList());
+    }
+}
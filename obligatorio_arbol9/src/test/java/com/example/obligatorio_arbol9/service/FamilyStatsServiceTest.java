@@ -0,0 +1,224 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.entity.*;
+import com.example.obligatorio_arbol9.repository.FamilyStatsRepository;
+import com.example.obligatorio_arbol9.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+// Agregados de familia contra la base (H2) a lo largo de altas, bajas y fusiones.
+// El grafo en memoria se arma a mano con las mismas relaciones que se cargan.
+@DataJpaTest
+@Import(FamilyStatsService.class)
+class FamilyStatsServiceTest {
+
+    @Autowired
+    private FamilyStatsService servicio;
+
+    @Autowired
+    private FamilyStatsRepository familyStatsRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @MockBean
+    private FamilyGraphService familyGraphService;
+
+    @MockBean
+    private TreeEventService treeEventService;
+
+    private final FamilyGraph graph = new FamilyGraph();
+    private final AtomicInteger emails = new AtomicInteger();
+
+    @BeforeEach
+    void preparar() {
+        when(familyGraphService.getGraph()).thenReturn(graph);
+    }
+
+    private User persona(String nacimiento, String fallecimiento, boolean confirmada) {
+        User user = userRepository.save(User.builder()
+                .nombre("Persona " + emails.incrementAndGet())
+                .email("persona" + emails.get() + "@x.com")
+                .fechaNacimiento(nacimiento == null ? null : LocalDate.parse(nacimiento))
+                .fechaFallecimiento(fallecimiento == null ? null : LocalDate.parse(fallecimiento))
+                .grado(0)
+                .confirmationStatus(confirmada ? ConfirmationStatus.CONFIRMED : ConfirmationStatus.PENDING)
+                .build());
+        graph.aplicar(GraphChange.builder().tipo(GraphChangeType.NODO_AGREGADO).desdeId(user.getId()).build());
+        return user;
+    }
+
+    private User viva() {
+        return persona("1990-01-01", null, false);
+    }
+
+    // hijo -> padre en el grafo; el que todavía no tiene familia se suma a la del otro
+    private void padre(User hijo, User padre) {
+        graph.aplicar(GraphChange.builder().tipo(GraphChangeType.PADRE_AGREGADO)
+                .desdeId(hijo.getId()).hastaId(padre.getId()).build());
+        if (hijo.getFamiliaId() == null) {
+            servicio.miembroAgregado(padre.getFamiliaId(), hijo);
+        } else {
+            servicio.miembroAgregado(hijo.getFamiliaId(), padre);
+        }
+    }
+
+    private FamilyStats stats(Long familiaId) {
+        entityManager.flush();
+        entityManager.clear();
+        return familyStatsRepository.findById(familiaId).orElseThrow();
+    }
+
+    private Long familiaDe(User user) {
+        entityManager.flush();
+        entityManager.clear();
+        return userRepository.findById(user.getId()).orElseThrow().getFamiliaId();
+    }
+
+    @Test
+    void lasAltasYActualizacionesSumanCadaAporte() {
+        User ana = persona("1960-05-01", null, true);
+        servicio.registrarNuevaFamilia(ana);
+        padre(ana, persona("1900-03-01", "1985-02-01", false));
+        padre(persona("1990-01-01", null, true), ana);
+
+        FamilyStats stats = stats(ana.getFamiliaId());
+        assertThat(stats.getMiembros()).isEqualTo(3);
+        assertThat(stats.getVivos()).isEqualTo(2);
+        assertThat(stats.getFallecidos()).isEqualTo(1);
+        assertThat(stats.getConfirmados()).isEqualTo(2);
+        assertThat(stats.getSumaAniosVida()).isEqualTo(84);
+        assertThat(stats.getDistribucionLongevidad()).containsExactly(Map.entry(80, 1L));
+
+        // Ana fallece: deja de estar viva y suma su edad
+        User guardada = userRepository.findById(ana.getId()).orElseThrow();
+        FamilyStatsService.Aporte anterior = FamilyStatsService.Aporte.of(guardada);
+        guardada.setFechaFallecimiento(LocalDate.parse("2020-05-02"));
+        servicio.miembroActualizado(guardada, anterior);
+
+        stats = stats(ana.getFamiliaId());
+        assertThat(stats.getVivos()).isEqualTo(1);
+        assertThat(stats.getFallecidos()).isEqualTo(2);
+        assertThat(stats.getSumaAniosVida()).isEqualTo(84 + 60);
+        assertThat(stats.getDistribucionLongevidad()).containsOnly(Map.entry(80, 1L), Map.entry(60, 1L));
+    }
+
+    @Test
+    void unaFechaDeFallecimientoAnteriorNoDejaAniosNegativos() {
+        User ana = viva();
+        servicio.registrarNuevaFamilia(ana);
+        User mal = persona("1950-01-01", "1920-01-01", false);
+        padre(mal, ana);
+
+        FamilyStats stats = stats(ana.getFamiliaId());
+        assertThat(stats.getFallecidos()).isEqualTo(1);
+        assertThat(stats.getSumaAniosVida()).isZero();
+        assertThat(stats.getDistribucionLongevidad()).isEmpty();
+
+        servicio.miembroEliminado(ana.getFamiliaId(), FamilyStatsService.Aporte.of(mal));
+        stats = stats(ana.getFamiliaId());
+        assertThat(stats.getMiembros()).isEqualTo(1);
+        assertThat(stats.getSumaAniosVida()).isZero();
+        assertThat(stats.getDistribucionLongevidad()).isEmpty();
+    }
+
+    @Test
+    void borrarAUnaHojaNoParteLaFamilia() {
+        User abuela = persona("1920-01-01", "2000-06-01", false);
+        servicio.registrarNuevaFamilia(abuela);
+        User madre = viva();
+        padre(madre, abuela);
+        User hija = viva();
+        padre(hija, madre);
+
+        servicio.miembroEliminado(userRepository.findById(hija.getId()).orElseThrow());
+
+        assertThat(familyStatsRepository.count()).isEqualTo(1);
+        FamilyStats stats = stats(abuela.getFamiliaId());
+        assertThat(stats.getMiembros()).isEqualTo(2);
+        assertThat(stats.getVivos()).isEqualTo(1);
+        verifyNoInteractions(treeEventService);
+    }
+
+    @Test
+    void borrarAQuienUneDosPartesLasSepara() {
+        // abuela <- madre <- hija <- nieta; al borrar a la madre quedan {abuela} y {hija, nieta}
+        User abuela = persona("1920-01-01", "2000-06-01", true);
+        servicio.registrarNuevaFamilia(abuela);
+        User madre = viva();
+        padre(madre, abuela);
+        User hija = viva();
+        padre(hija, madre);
+        User nieta = persona("2010-01-01", null, true);
+        padre(nieta, hija);
+        Long familia = abuela.getFamiliaId();
+
+        servicio.miembroEliminado(userRepository.findById(madre.getId()).orElseThrow());
+
+        // La parte más grande conserva la familia; la abuela pasa a una nueva con su aporte
+        Long nueva = familiaDe(abuela);
+        assertThat(nueva).isNotEqualTo(familia);
+        assertThat(familiaDe(hija)).isEqualTo(familia);
+        assertThat(familiaDe(nieta)).isEqualTo(familia);
+
+        FamilyStats restante = stats(familia);
+        assertThat(restante.getMiembros()).isEqualTo(2);
+        assertThat(restante.getVivos()).isEqualTo(2);
+        assertThat(restante.getFallecidos()).isZero();
+        assertThat(restante.getConfirmados()).isEqualTo(1);
+        assertThat(restante.getDistribucionLongevidad()).isEmpty();
+
+        FamilyStats separada = stats(nueva);
+        assertThat(separada.getMiembros()).isEqualTo(1);
+        assertThat(separada.getFallecidos()).isEqualTo(1);
+        assertThat(separada.getConfirmados()).isEqualTo(1);
+        assertThat(separada.getSumaAniosVida()).isEqualTo(80);
+        assertThat(separada.getDistribucionLongevidad()).containsExactly(Map.entry(80, 1L));
+
+        verify(treeEventService).separarFamilia(familia, nueva, Set.of(abuela.getId()));
+    }
+
+    @Test
+    void fusionarSumaLasFamiliasYRestaAlEliminado() {
+        User ana = persona("1930-01-01", "2001-01-01", true);
+        servicio.registrarNuevaFamilia(ana);
+        User hijo = viva();
+        padre(hijo, ana);
+        User duplicada = persona("1930-01-01", "2001-01-01", false);
+        servicio.registrarNuevaFamilia(duplicada);
+        User nieto = viva();
+        padre(nieto, duplicada);
+        Long destino = ana.getFamiliaId();
+        Long origen = duplicada.getFamiliaId();
+
+        // Lo que hace UserMergeService: une las familias y resta a la persona eliminada
+        servicio.fusionarFamilias(destino, origen);
+        servicio.miembroEliminado(destino, FamilyStatsService.Aporte.of(duplicada));
+
+        assertThat(familyStatsRepository.existsById(origen)).isFalse();
+        assertThat(familiaDe(nieto)).isEqualTo(destino);
+        FamilyStats stats = stats(destino);
+        assertThat(stats.getMiembros()).isEqualTo(3);
+        assertThat(stats.getVivos()).isEqualTo(2);
+        assertThat(stats.getFallecidos()).isEqualTo(1);
+        assertThat(stats.getConfirmados()).isEqualTo(1);
+        assertThat(stats.getSumaAniosVida()).isEqualTo(71);
+        assertThat(stats.getDistribucionLongevidad()).containsExactly(Map.entry(70, 1L));
+    }
+}
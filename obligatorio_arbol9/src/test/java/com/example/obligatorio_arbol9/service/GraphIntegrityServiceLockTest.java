@@ -0,0 +1,152 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.entity.ConfirmationStatus;
+import com.example.obligatorio_arbol9.entity.User;
+import com.example.obligatorio_arbol9.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.when;
+
+// Chequeos incrementales contra la base (H2) con transacciones reales y concurrentes.
+// El grafo en memoria se simula vacío: los padres tienen que contarse en la tabla relationship.
+@DataJpaTest
+@Import(GraphIntegrityService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class GraphIntegrityServiceLockTest {
+
+    @Autowired
+    private GraphIntegrityService servicio;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private FamilyGraphService familyGraphService;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transaccion;
+    private final ExecutorService hilos = Executors.newFixedThreadPool(2);
+    private final AtomicInteger emails = new AtomicInteger();
+
+    @BeforeEach
+    void preparar() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transaccion = new TransactionTemplate(transactionManager);
+        when(familyGraphService.getGraph()).thenReturn(new FamilyGraph());
+    }
+
+    @AfterEach
+    void limpiar() {
+        hilos.shutdownNow();
+        jdbcTemplate.update("DELETE FROM relationship");
+        jdbcTemplate.update("DELETE FROM users");
+    }
+
+    private User persona(String nombre) {
+        return userRepository.save(User.builder()
+                .nombre(nombre)
+                .email("persona" + emails.incrementAndGet() + "@x.com")
+                .grado(0)
+                .confirmationStatus(ConfirmationStatus.PENDING)
+                .build());
+    }
+
+    private void padre(User hijo, User padre) {
+        jdbcTemplate.update("INSERT INTO relationship (from_id, to_id, type) VALUES (?, ?, 'PADRE')",
+                hijo.getId(), padre.getId());
+    }
+
+    private int cantidadDePadres(User hijo) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM relationship WHERE from_id = ? AND type = 'PADRE'", Integer.class, hijo.getId());
+    }
+
+    @Test
+    void dosAltasConcurrentesDePadreNoDejanTresPadres() throws Exception {
+        User hijo = persona("Hijo");
+        padre(hijo, persona("Madre"));
+        User primero = persona("Padre");
+        User segundo = persona("Otro");
+
+        // La primera valida, agrega el padre y tarda en confirmar; la segunda empieza mientras tanto
+        CountDownLatch validada = new CountDownLatch(1);
+        Future<?> primera = hilos.submit(() -> transaccion.executeWithoutResult(status -> {
+            servicio.validarNuevoPadre(hijo, primero);
+            padre(hijo, primero);
+            validada.countDown();
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertThat(validada.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<?> segunda = hilos.submit(() -> transaccion.executeWithoutResult(status -> {
+            servicio.validarNuevoPadre(hijo, segundo);
+            padre(hijo, segundo);
+        }));
+
+        primera.get(5, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> segunda.get(5, TimeUnit.SECONDS))
+                .hasRootCauseMessage("Una persona no puede tener más de dos padres");
+        assertThat(cantidadDePadres(hijo)).isEqualTo(2);
+    }
+
+    @Test
+    void cuentaLosPadresEnLaBaseAunqueElGrafoNoLosTengaTodavia() {
+        User hijo = persona("Hijo");
+        padre(hijo, persona("Madre"));
+        padre(hijo, persona("Padre"));
+
+        assertThatThrownBy(() -> transaccion.executeWithoutResult(status ->
+                servicio.validarNuevoPadre(hijo, User.builder().nombre("Tercero").build())))
+                .hasMessage("Una persona no puede tener más de dos padres");
+    }
+
+    @Test
+    void laFusionCuentaLosPadresDeAmbosEnLaBase() {
+        User survivor = persona("Ana");
+        User loser = persona("Ana Duplicada");
+        padre(survivor, persona("Madre"));
+        padre(survivor, persona("Padre"));
+        padre(loser, persona("Otro"));
+
+        assertThatThrownBy(() -> transaccion.executeWithoutResult(status -> servicio.validarFusion(survivor, loser)))
+                .hasMessage("La persona fusionada tendría más de dos padres");
+    }
+
+    @Test
+    void laFusionConPadresCompartidosPasa() {
+        User survivor = persona("Ana");
+        User loser = persona("Ana Duplicada");
+        User madre = persona("Madre");
+        padre(survivor, madre);
+        padre(loser, madre);
+        padre(loser, persona("Padre"));
+
+        transaccion.executeWithoutResult(status -> servicio.validarFusion(survivor, loser));
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.dto.IntegrityReportDTO;
+import com.example.obligatorio_arbol9.dto.IntegrityViolationDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Escaneo completo de integridad contra una base H2 en memoria con las tablas users y relationship
+class GraphIntegrityServiceTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private GraphIntegrityService servicio;
+
+    @BeforeEach
+    void crearBase() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:integridad;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT PRIMARY KEY, fecha_nacimiento DATE)");
+        jdbcTemplate.execute("CREATE TABLE relationship (from_id BIGINT, type VARCHAR(20), to_id BIGINT, "
+                + "PRIMARY KEY (from_id, type, to_id))");
+
+        servicio = new GraphIntegrityService();
+        ReflectionTestUtils.setField(servicio, "dataSource", dataSource);
+        ReflectionTestUtils.setField(servicio, "particiones", 2);
+        servicio.init();
+    }
+
+    @AfterEach
+    void borrarBase() {
+        servicio.cerrar();
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    private void usuarios(long... ids) {
+        for (long id : ids) {
+            jdbcTemplate.update("INSERT INTO users (id, fecha_nacimiento) VALUES (?, NULL)", id);
+        }
+    }
+
+    private void padre(long hijo, long padre) {
+        jdbcTemplate.update("INSERT INTO relationship (from_id, type, to_id) VALUES (?, 'PADRE', ?)", hijo, padre);
+    }
+
+    private IntegrityReportDTO escanear() throws InterruptedException {
+        servicio.iniciarEscaneo();
+        for (int i = 0; i < 200 && servicio.getInforme().isEnCurso(); i++) {
+            Thread.sleep(50);
+        }
+        IntegrityReportDTO informe = servicio.getInforme();
+        assertThat(informe.isEnCurso()).isFalse();
+        assertThat(informe.getError()).isNull();
+        return informe;
+    }
+
+    private static List<IntegrityViolationDTO> ciclos(IntegrityReportDTO informe) {
+        return informe.getViolaciones().stream()
+                .filter(v -> v.getTipo() == IntegrityViolationDTO.Tipo.CICLO)
+                .toList();
+    }
+
+    @Test
+    void unArbolSinCiclosNoInformaNada() throws InterruptedException {
+        usuarios(1, 2, 3, 4);
+        padre(3, 1);
+        padre(3, 2);
+        padre(4, 3);
+
+        IntegrityReportDTO informe = escanear();
+
+        assertThat(informe.getAristasPadre()).isEqualTo(3);
+        assertThat(informe.getViolaciones()).isEmpty();
+    }
+
+    @Test
+    void informaElCicloConSuCaminoCerrado() throws InterruptedException {
+        // 1 es padre de 2, 2 de 3 y 3 de 1; 4 desciende del ciclo pero no forma parte de él
+        usuarios(1, 2, 3, 4);
+        padre(2, 1);
+        padre(3, 2);
+        padre(1, 3);
+        padre(4, 1);
+
+        List<IntegrityViolationDTO> ciclos = ciclos(escanear());
+
+        assertThat(ciclos).hasSize(1);
+        List<Long> camino = ciclos.get(0).getIds();
+        assertThat(camino).hasSize(4);
+        assertThat(camino.get(0)).isEqualTo(camino.get(3));
+        assertThat(camino.subList(0, 3)).containsExactlyInAnyOrder(1L, 2L, 3L);
+    }
+
+    @Test
+    void informaAQuienEsSuPropioPadre() throws InterruptedException {
+        usuarios(10, 11);
+        padre(10, 10);
+        padre(11, 10);
+
+        List<IntegrityViolationDTO> ciclos = ciclos(escanear());
+
+        assertThat(ciclos).hasSize(1);
+        assertThat(ciclos.get(0).getIds()).containsExactly(10L, 10L);
+        assertThat(ciclos.get(0).getDetalle()).isEqualTo("Es su propio padre o madre");
+    }
+
+    @Test
+    void informaCadaCicloIndependienteUnaVez() throws InterruptedException {
+        usuarios(1, 2, 5, 6, 7);
+        padre(1, 2);
+        padre(2, 1);
+        padre(5, 6);
+        padre(6, 7);
+        padre(7, 5);
+
+        List<IntegrityViolationDTO> ciclos = ciclos(escanear());
+
+        assertThat(ciclos).hasSize(2);
+        assertThat(ciclos).extracting(v -> v.getIds().size()).containsExactlyInAnyOrder(3, 4);
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.controller.UserController;
+import com.example.obligatorio_arbol9.dto.EdgeDTO;
+import com.example.obligatorio_arbol9.dto.FamilyGraphDTO;
+import com.example.obligatorio_arbol9.dto.UserSummaryDTO;
+import com.example.obligatorio_arbol9.entity.GraphChange;
+import com.example.obligatorio_arbol9.entity.GraphChangeType;
+import com.example.obligatorio_arbol9.entity.User;
+import com.example.obligatorio_arbol9.exception.GlobalExceptionHandler;
+import com.example.obligatorio_arbol9.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Vecindario de varias raíces sobre un grafo en memoria armado a mano:
+//
+//         1
+//       /   \
+//  3 = 2     5
+//   \ /      |
+//    4       6
+//            |
+//            7
+//
+// 8 existe en la base pero todavía no tiene relaciones en el grafo
+class NeighbourhoodServiceTest {
+
+    private final FamilyGraph graph = new FamilyGraph();
+    private final Set<Long> enLaBase = new HashSet<>(Set.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L));
+    private UserRepository userRepository;
+    private NeighbourhoodService servicio;
+
+    @BeforeEach
+    void crearGrafo() {
+        for (long id = 1; id <= 7; id++) {
+            graph.aplicar(GraphChange.builder().tipo(GraphChangeType.NODO_AGREGADO).desdeId(id).build());
+        }
+        padre(2, 1);
+        padre(5, 1);
+        padre(4, 2);
+        padre(4, 3);
+        padre(6, 5);
+        padre(7, 6);
+        graph.aplicar(GraphChange.builder().tipo(GraphChangeType.CONYUGE_AGREGADO).desdeId(3L).hastaId(2L).build());
+
+        FamilyGraphService familyGraphService = mock(FamilyGraphService.class);
+        when(familyGraphService.getGraph()).thenReturn(graph);
+        userRepository = mock(UserRepository.class);
+        when(userRepository.findAllById(anyIterable())).thenAnswer(invocacion -> {
+            Collection<Long> ids = invocacion.getArgument(0);
+            return ids.stream()
+                    .filter(enLaBase::contains)
+                    .map(id -> User.builder().id(id).nombre("Persona " + id).build())
+                    .toList();
+        });
+
+        servicio = new NeighbourhoodService();
+        ReflectionTestUtils.setField(servicio, "familyGraphService", familyGraphService);
+        ReflectionTestUtils.setField(servicio, "userRepository", userRepository);
+    }
+
+    private void padre(long hijo, long padre) {
+        graph.aplicar(GraphChange.builder().tipo(GraphChangeType.PADRE_AGREGADO).desdeId(hijo).hastaId(padre).build());
+    }
+
+    private static List<Long> ids(FamilyGraphDTO dto) {
+        return dto.getNodos().stream().map(UserSummaryDTO::getId).toList();
+    }
+
+    @Test
+    void variasRaicesSeUnenSinRepetirPersonasNiAristas() {
+        // El abuelo 1 se alcanza desde las dos raíces, a distancia 2 de cada una
+        FamilyGraphDTO dto = servicio.getNeighbourhood(List.of(4L, 6L), 2);
+
+        assertThat(ids(dto)).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L);
+        assertThat(dto.getAristas())
+                .extracting(EdgeDTO::getDesdeId, EdgeDTO::getHastaId, EdgeDTO::getTipo)
+                .containsExactlyInAnyOrder(
+                        tuple(2L, 1L, EdgeDTO.Tipo.PADRE),
+                        tuple(5L, 1L, EdgeDTO.Tipo.PADRE),
+                        tuple(4L, 2L, EdgeDTO.Tipo.PADRE),
+                        tuple(4L, 3L, EdgeDTO.Tipo.PADRE),
+                        tuple(6L, 5L, EdgeDTO.Tipo.PADRE),
+                        tuple(7L, 6L, EdgeDTO.Tipo.PADRE),
+                        tuple(2L, 3L, EdgeDTO.Tipo.CONYUGE));
+    }
+
+    @Test
+    void laProfundidadSeMideDesdeLaRaizMasCercanaYSoloSalenAristasInternas() {
+        FamilyGraphDTO dto = servicio.getNeighbourhood(List.of(4L, 6L), 1);
+
+        assertThat(ids(dto)).containsExactly(2L, 3L, 4L, 5L, 6L, 7L);
+        // 2 -> 1 y 5 -> 1 quedan afuera porque 1 no está en el vecindario
+        assertThat(dto.getAristas()).extracting(EdgeDTO::getHastaId).doesNotContain(1L);
+    }
+
+    @Test
+    void cadaParejaDeConyugesSaleUnaSolaVez() {
+        // Los dos cónyuges son raíces y cada uno ve al otro como vecino
+        FamilyGraphDTO dto = servicio.getNeighbourhood(List.of(3L, 2L), 0);
+
+        assertThat(dto.getAristas())
+                .extracting(EdgeDTO::getDesdeId, EdgeDTO::getHastaId, EdgeDTO::getTipo)
+                .containsExactly(tuple(2L, 3L, EdgeDTO.Tipo.CONYUGE));
+    }
+
+    @Test
+    void lasRaicesRepetidasSeCuentanUnaVez() {
+        FamilyGraphDTO dto = servicio.getNeighbourhood(List.of(7L, 7L, 6L), 0);
+
+        assertThat(dto.getRaices()).containsExactly(7L, 6L);
+        assertThat(ids(dto)).containsExactly(6L, 7L);
+    }
+
+    @Test
+    void lasRaicesFueraDelGrafoSeBuscanEnUnaSolaConsulta() {
+        FamilyGraphDTO dto = servicio.getNeighbourhood(List.of(8L, 4L), 0);
+        assertThat(ids(dto)).containsExactly(4L, 8L);
+
+        assertThatThrownBy(() -> servicio.getNeighbourhood(List.of(8L, 99L, 98L), 0))
+                .hasMessage("Usuario no encontrado");
+
+        verify(userRepository, never()).existsById(any());
+        // Una consulta por llamada para las raíces que faltan, más la de los nodos de la primera
+        verify(userRepository).findAllById(Set.of(8L, 99L, 98L));
+    }
+
+    @Test
+    void unaRaizNulaEsUnPedidoInvalido() throws Exception {
+        assertThatThrownBy(() -> servicio.getNeighbourhood(Arrays.asList(4L, null), 1))
+                .hasMessage("Las raíces no pueden ser nulas");
+
+        UserController controller = new UserController();
+        ReflectionTestUtils.setField(controller, "neighbourhoodService", servicio);
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+
+        mvc.perform(get("/api/users/graph").param("roots", "4,,6"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/api/users/graph").param("roots", "4", "6").param("depth", "0"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.nodos.length()").value(2));
+    }
+}
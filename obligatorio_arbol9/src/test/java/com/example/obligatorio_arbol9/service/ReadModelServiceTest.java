@@ -0,0 +1,185 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.dto.UserTreeDTO;
+import com.example.obligatorio_arbol9.entity.*;
+import com.example.obligatorio_arbol9.repository.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// Proyector del modelo de lectura con el grafo en memoria real y los repositorios simulados
+class ReadModelServiceTest {
+
+    private FamilyGraphService familyGraphService;
+    private OutboxService outboxService;
+    private OutboxEventRepository outboxEventRepository;
+    private UserReadModelRepository userReadModelRepository;
+    private UserRepository userRepository;
+    private ReadModelService servicio;
+
+    // Eventos pendientes del outbox, como los vería el proyector
+    private final List<OutboxEvent> outbox = new ArrayList<>();
+
+    @BeforeEach
+    void crearServicios() {
+        GraphChangeRepository graphChangeRepository = mock(GraphChangeRepository.class);
+        AtomicLong seq = new AtomicLong();
+        when(graphChangeRepository.save(any(GraphChange.class))).thenAnswer(invocacion -> {
+            GraphChange cambio = invocacion.getArgument(0);
+            cambio.setSeq(seq.incrementAndGet());
+            return cambio;
+        });
+        // Todos los cambios siguen en el registro: ninguno entró todavía en un snapshot
+        when(graphChangeRepository.existsById(anyLong())).thenReturn(true);
+        familyGraphService = new FamilyGraphService();
+        ReflectionTestUtils.setField(familyGraphService, "graphChangeRepository", graphChangeRepository);
+        ReflectionTestUtils.setField(familyGraphService, "jdbcTemplate", mock(JdbcTemplate.class));
+        ReflectionTestUtils.setField(familyGraphService, "snapshotPath", Path.of("no-existe", "graph.snapshot").toString());
+        for (long id = 1; id <= 3; id++) {
+            familyGraphService.registrar(GraphChangeType.NODO_AGREGADO, id, null);
+        }
+
+        outboxEventRepository = mock(OutboxEventRepository.class);
+        AtomicLong idEvento = new AtomicLong();
+        when(outboxEventRepository.save(any(OutboxEvent.class))).thenAnswer(invocacion -> {
+            OutboxEvent evento = invocacion.getArgument(0);
+            evento.setId(idEvento.incrementAndGet());
+            outbox.add(evento);
+            return evento;
+        });
+        when(outboxEventRepository.findAllByFallidoFalseOrderByIdAsc(any()))
+                .thenAnswer(invocacion -> outbox.stream().filter(e -> !e.isFallido()).toList());
+        doAnswer(invocacion -> outbox.removeAll(invocacion.getArgument(0)))
+                .when(outboxEventRepository).deleteAllInBatch(anyIterable());
+
+        outboxService = new OutboxService();
+        ReflectionTestUtils.setField(outboxService, "outboxEventRepository", outboxEventRepository);
+        ReflectionTestUtils.setField(outboxService, "familyGraphService", familyGraphService);
+
+        userRepository = mock(UserRepository.class);
+        when(userRepository.findById(anyLong())).thenAnswer(invocacion ->
+                Optional.of(User.builder().id(invocacion.getArgument(0)).nombre("Persona " + invocacion.getArgument(0)).build()));
+
+        // El árbol guardado sale del grafo en memoria, como en UserService
+        UserService userService = mock(UserService.class);
+        when(userService.getGenealogyTree(anyLong(), anyInt())).thenAnswer(invocacion -> {
+            long id = invocacion.getArgument(0);
+            List<UserTreeDTO> padres = new ArrayList<>();
+            for (long padre : familyGraphService.getGraph().vecinos(id).padres()) {
+                padres.add(UserTreeDTO.builder().id(padre).padres(List.of()).hijos(List.of()).conyuges(List.of()).build());
+            }
+            return UserTreeDTO.builder().id(id).padres(padres).hijos(List.of()).conyuges(List.of()).build();
+        });
+
+        userReadModelRepository = mock(UserReadModelRepository.class);
+        servicio = new ReadModelService();
+        ReflectionTestUtils.setField(servicio, "outboxEventRepository", outboxEventRepository);
+        ReflectionTestUtils.setField(servicio, "userReadModelRepository", userReadModelRepository);
+        ReflectionTestUtils.setField(servicio, "userRepository", userRepository);
+        ReflectionTestUtils.setField(servicio, "relationshipRepository", mock(RelationshipRepository.class));
+        ReflectionTestUtils.setField(servicio, "userService", userService);
+        ReflectionTestUtils.setField(servicio, "familyGraphService", familyGraphService);
+        ReflectionTestUtils.setField(servicio, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(servicio, "transactionTemplate",
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+    }
+
+    @AfterEach
+    void limpiarTransaccion() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private UserReadModel filaGuardada(long id) {
+        ArgumentCaptor<UserReadModel> filas = ArgumentCaptor.forClass(UserReadModel.class);
+        verify(userReadModelRepository, atLeastOnce()).save(filas.capture());
+        return filas.getAllValues().stream()
+                .filter(f -> f.getId() == id)
+                .reduce((primera, ultima) -> ultima)
+                .orElseThrow();
+    }
+
+    @Test
+    void esperaAQueElGrafoApliqueLaTransaccionDelEvento() {
+        // Transacción de la mutación: el evento se publica antes de registrar el cambio del grafo
+        TransactionSynchronizationManager.initSynchronization();
+        outboxService.publicar(OutboxEventType.RELACION_AGREGADA, 3L, 1L);
+        familyGraphService.registrar(GraphChangeType.PADRE_AGREGADO, 3L, 1L);
+        TransactionSynchronizationUtils.triggerBeforeCommit(false);
+        OutboxEvent evento = outbox.get(0);
+        assertThat(evento.getSeqGrafo()).isEqualTo(4L);
+
+        // Confirmada pero sin pasar por afterCommit: el grafo todavía no tiene la arista
+        servicio.proyectarPendientes();
+        verify(userReadModelRepository, never()).save(any());
+        assertThat(outbox).containsExactly(evento);
+
+        TransactionSynchronizationUtils.triggerAfterCommit();
+        TransactionSynchronizationUtils.triggerAfterCompletion(0);
+        TransactionSynchronizationManager.clearSynchronization();
+
+        servicio.proyectarPendientes();
+        assertThat(filaGuardada(3).getArbol()).contains("\"padres\":[{\"id\":1");
+        assertThat(outbox).isEmpty();
+    }
+
+    @Test
+    void unEventoPendienteNoDejaPasarALosSiguientes() {
+        TransactionSynchronizationManager.initSynchronization();
+        familyGraphService.registrar(GraphChangeType.PADRE_AGREGADO, 3L, 1L);
+        outboxService.publicar(OutboxEventType.RELACION_AGREGADA, 3L, 1L);
+        TransactionSynchronizationUtils.triggerBeforeCommit(false);
+        TransactionSynchronizationManager.clearSynchronization();
+        // Una transacción posterior sin cambios en el grafo
+        outboxService.publicar(OutboxEventType.USUARIO_ACTUALIZADO, 2L, null);
+
+        servicio.proyectarPendientes();
+
+        verify(userReadModelRepository, never()).save(any());
+        assertThat(outbox).hasSize(2);
+    }
+
+    @Test
+    void unaFilaQueFallaNoFrenaAlRestoYSuEventoSeApartaAlFinal() {
+        outboxService.publicar(OutboxEventType.USUARIO_ACTUALIZADO, 1L, null);
+        outboxService.publicar(OutboxEventType.USUARIO_ACTUALIZADO, 2L, null);
+        when(userRepository.findById(1L)).thenThrow(new RuntimeException("Fila dañada"));
+
+        servicio.proyectarPendientes();
+
+        assertThat(filaGuardada(2).getNombre()).isEqualTo("Persona 2");
+        assertThat(outbox).hasSize(1);
+        OutboxEvent fallido = outbox.get(0);
+        assertThat(fallido.getUserId()).isEqualTo(1L);
+        assertThat(fallido.getIntentos()).isEqualTo(1);
+        assertThat(fallido.isFallido()).isFalse();
+
+        for (int i = 1; i < ReadModelService.MAX_INTENTOS; i++) {
+            servicio.proyectarPendientes();
+        }
+        assertThat(fallido.getIntentos()).isEqualTo(ReadModelService.MAX_INTENTOS);
+        assertThat(fallido.isFallido()).isTrue();
+
+        // Apartado, ya no se vuelve a intentar
+        clearInvocations(userRepository);
+        servicio.proyectarPendientes();
+        verify(userRepository, never()).findById(anyLong());
+    }
+}
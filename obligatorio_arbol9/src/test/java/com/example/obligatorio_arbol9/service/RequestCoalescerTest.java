@@ -0,0 +1,206 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.exception.GlobalExceptionHandler;
+import com.example.obligatorio_arbol9.exception.ServiceOverloadedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// Agrupación de pedidos idénticos y respuesta 503 cuando no hay lugar para calcular ni esperar
+class RequestCoalescerTest {
+
+    private final ExecutorService hilos = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void cerrar() {
+        hilos.shutdownNow();
+    }
+
+    private static RequestCoalescer coalescer(int maxConcurrentes, int maxEnCola, int maxEsperandoPorClave) {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        ReflectionTestUtils.setField(coalescer, "maxConcurrentes", maxConcurrentes);
+        ReflectionTestUtils.setField(coalescer, "maxEnCola", maxEnCola);
+        ReflectionTestUtils.setField(coalescer, "esperaMaximaMs", 100L);
+        ReflectionTestUtils.setField(coalescer, "maxEsperandoPorClave", maxEsperandoPorClave);
+        ReflectionTestUtils.setField(coalescer, "reintentarEnSegundos", 3L);
+        coalescer.init();
+        return coalescer;
+    }
+
+    // Arranca un cálculo que queda bloqueado hasta que se abra el pestillo
+    private Future<String> calculoBloqueado(RequestCoalescer coalescer, String clave, CountDownLatch empezo,
+                                            CountDownLatch liberar, AtomicInteger calculos) throws InterruptedException {
+        Future<String> resultado = hilos.submit(() -> coalescer.ejecutar(clave, () -> {
+            calculos.incrementAndGet();
+            empezo.countDown();
+            try {
+                liberar.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "arbol-" + clave;
+        }));
+        assertThat(empezo.await(5, TimeUnit.SECONDS)).isTrue();
+        return resultado;
+    }
+
+    // Espera a que el hilo quede bloqueado esperando el cálculo de otro
+    private static void esperarBloqueado(Thread hilo) throws InterruptedException {
+        for (int i = 0; i < 500 && hilo.getState() != Thread.State.WAITING; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(hilo.getState()).isEqualTo(Thread.State.WAITING);
+    }
+
+    @Test
+    void pedidosConLaMismaClaveCompartenUnSoloCalculo() throws Exception {
+        RequestCoalescer coalescer = coalescer(8, 100, 100);
+        AtomicInteger calculos = new AtomicInteger();
+        CountDownLatch liberar = new CountDownLatch(1);
+        Future<String> primero = calculoBloqueado(coalescer, "1", new CountDownLatch(1), liberar, calculos);
+
+        CompletableFuture<String> segundo = new CompletableFuture<>();
+        Thread hilo = new Thread(() -> segundo.complete(coalescer.ejecutar("1", () -> {
+            calculos.incrementAndGet();
+            return "repetido";
+        })));
+        hilo.start();
+        esperarBloqueado(hilo);
+        liberar.countDown();
+
+        assertThat(primero.get(5, TimeUnit.SECONDS)).isEqualTo("arbol-1");
+        assertThat(segundo.get(5, TimeUnit.SECONDS)).isEqualTo("arbol-1");
+        assertThat(calculos.get()).isEqualTo(1);
+    }
+
+    @Test
+    void terminadoElCalculoElSiguientePedidoCalculaDeNuevo() {
+        RequestCoalescer coalescer = coalescer(8, 100, 100);
+        AtomicInteger calculos = new AtomicInteger();
+
+        coalescer.ejecutar("1", calculos::incrementAndGet);
+        coalescer.ejecutar("1", calculos::incrementAndGet);
+
+        assertThat(calculos.get()).isEqualTo(2);
+    }
+
+    @Test
+    void quienesEsperanRecibenElMismoError() throws Exception {
+        RequestCoalescer coalescer = coalescer(8, 100, 100);
+        CountDownLatch empezo = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        Future<Object> primero = hilos.submit(() -> coalescer.ejecutar("1", () -> {
+            empezo.countDown();
+            try {
+                liberar.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new RuntimeException("Usuario no encontrado");
+        }));
+        assertThat(empezo.await(5, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<Object> segundo = new CompletableFuture<>();
+        Thread hilo = new Thread(() -> {
+            try {
+                segundo.complete(coalescer.ejecutar("1", () -> "no debería calcularse"));
+            } catch (RuntimeException e) {
+                segundo.completeExceptionally(e);
+            }
+        });
+        hilo.start();
+        esperarBloqueado(hilo);
+        liberar.countDown();
+
+        assertThatThrownBy(() -> primero.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("Usuario no encontrado");
+        assertThatThrownBy(() -> segundo.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("Usuario no encontrado");
+    }
+
+    @Test
+    void sinLugarParaCalcularNiEsperarRespondeSobrecarga() throws Exception {
+        RequestCoalescer coalescer = coalescer(1, 0, 100);
+        CountDownLatch liberar = new CountDownLatch(1);
+        Future<String> ocupado = calculoBloqueado(coalescer, "1", new CountDownLatch(1), liberar, new AtomicInteger());
+
+        assertThatThrownBy(() -> coalescer.ejecutar("2", () -> "otro árbol"))
+                .isInstanceOf(ServiceOverloadedException.class);
+
+        liberar.countDown();
+        assertThat(ocupado.get(5, TimeUnit.SECONDS)).isEqualTo("arbol-1");
+        assertThat(coalescer.ejecutar("2", () -> "otro árbol")).isEqualTo("otro árbol");
+    }
+
+    @Test
+    void demasiadosEsperandoLaMismaClaveRespondeSobrecarga() throws Exception {
+        RequestCoalescer coalescer = coalescer(8, 100, 1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        Future<String> primero = calculoBloqueado(coalescer, "1", new CountDownLatch(1), liberar, new AtomicInteger());
+
+        Future<String> segundo = hilos.submit(() -> coalescer.ejecutar("1", () -> "repetido"));
+        for (int i = 0; i < 500 && !segundo.isDone() && esperando(coalescer, "1") < 1; i++) {
+            Thread.sleep(10);
+        }
+
+        assertThatThrownBy(() -> coalescer.ejecutar("1", () -> "repetido"))
+                .isInstanceOf(ServiceOverloadedException.class);
+
+        liberar.countDown();
+        assertThat(primero.get(5, TimeUnit.SECONDS)).isEqualTo("arbol-1");
+        assertThat(segundo.get(5, TimeUnit.SECONDS)).isEqualTo("arbol-1");
+    }
+
+    private static int esperando(RequestCoalescer coalescer, String clave) {
+        ConcurrentHashMap<?, ?> enVuelo = (ConcurrentHashMap<?, ?>) ReflectionTestUtils.getField(coalescer, "enVuelo");
+        Object vuelo = enVuelo.get(clave);
+        return vuelo == null ? 0 : ((AtomicInteger) ReflectionTestUtils.invokeMethod(vuelo, "esperando")).get();
+    }
+
+    @RestController
+    static class ArbolController {
+        private final RequestCoalescer coalescer;
+
+        ArbolController(RequestCoalescer coalescer) {
+            this.coalescer = coalescer;
+        }
+
+        @GetMapping("/arbol/{id}")
+        String arbol(@PathVariable String id) {
+            return coalescer.ejecutar(id, () -> "arbol-" + id);
+        }
+    }
+
+    @Test
+    void laSobrecargaLlegaAlClienteComo503ConRetryAfter() throws Exception {
+        RequestCoalescer coalescer = coalescer(1, 0, 100);
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new ArbolController(coalescer))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+        CountDownLatch liberar = new CountDownLatch(1);
+        Future<String> ocupado = calculoBloqueado(coalescer, "1", new CountDownLatch(1), liberar, new AtomicInteger());
+
+        mockMvc.perform(get("/arbol/2"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "3"))
+                .andExpect(jsonPath("$.status").value(503));
+
+        liberar.countDown();
+        ocupado.get(5, TimeUnit.SECONDS);
+        mockMvc.perform(get("/arbol/2"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("arbol-2"));
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.dto.TreeChangeEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+// Difusión SSE con emisores que registran lo enviado y pueden quedar trabados como un cliente lento
+class TreeEventServiceTest {
+
+    private static final long FAMILIA = 1L;
+
+    // Todos los envíos esperan a este latch: simula clientes que no leen
+    private final CountDownLatch liberar = new CountDownLatch(1);
+    private final List<EmisorGrabador> emisores = Collections.synchronizedList(new ArrayList<>());
+    private TreeEventService servicio;
+
+    private class EmisorGrabador extends SseEmitter {
+        final List<TreeChangeEvent> recibidos = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch primerEnvio = new CountDownLatch(1);
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            builder.build().stream()
+                    .map(DataWithMediaType::getData)
+                    .filter(TreeChangeEvent.class::isInstance)
+                    .map(TreeChangeEvent.class::cast)
+                    .forEach(recibidos::add);
+            primerEnvio.countDown();
+            try {
+                liberar.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private TreeEventService crear(int buffer, int hilos) {
+        TreeEventService nuevo = new TreeEventService() {
+            @Override
+            SseEmitter crearEmitter() {
+                EmisorGrabador emisor = new EmisorGrabador();
+                emisores.add(emisor);
+                return emisor;
+            }
+        };
+        ReflectionTestUtils.setField(nuevo, "bufferSize", buffer);
+        ReflectionTestUtils.setField(nuevo, "envioMaximoMs", 10_000L);
+        ReflectionTestUtils.setField(nuevo, "hilosDeEnvio", hilos);
+        nuevo.init();
+        return nuevo;
+    }
+
+    @AfterEach
+    void cerrar() {
+        liberar.countDown();
+        if (servicio != null) {
+            servicio.cerrar();
+        }
+    }
+
+    private static TreeChangeEvent cambio(long id) {
+        return TreeChangeEvent.builder().tipo(TreeChangeEvent.Tipo.NODO_ACTUALIZADO).id(id).build();
+    }
+
+    private static void esperar(EmisorGrabador emisor, int eventos) throws InterruptedException {
+        for (int i = 0; i < 100 && emisor.recibidos.size() < eventos; i++) {
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void siElBufferSeLlenaSeDescartaYSePideResincronizar() throws InterruptedException {
+        servicio = crear(4, 1);
+        servicio.suscribir(FAMILIA, 10L);
+        EmisorGrabador emisor = emisores.get(0);
+
+        // El primer evento sale y el cliente no lo termina de leer
+        servicio.publicar(FAMILIA, cambio(0));
+        assertThat(emisor.primerEnvio.await(5, TimeUnit.SECONDS)).isTrue();
+        // Entran 4; el quinto desborda y vacía el buffer; el sexto queda después de la resincronización
+        for (long id = 1; id <= 6; id++) {
+            servicio.publicar(FAMILIA, cambio(id));
+        }
+        liberar.countDown();
+        esperar(emisor, 3);
+
+        assertThat(emisor.recibidos).extracting(TreeChangeEvent::getTipo, TreeChangeEvent::getId).containsExactly(
+                tuple(TreeChangeEvent.Tipo.NODO_ACTUALIZADO, 0L),
+                tuple(TreeChangeEvent.Tipo.RESINCRONIZAR, null),
+                tuple(TreeChangeEvent.Tipo.NODO_ACTUALIZADO, 6L));
+    }
+
+    @Test
+    void sinDesbordeLlegaTodoEnOrden() throws InterruptedException {
+        servicio = crear(8, 1);
+        servicio.suscribir(FAMILIA, 10L);
+        EmisorGrabador emisor = emisores.get(0);
+        liberar.countDown();
+
+        for (long id = 1; id <= 5; id++) {
+            servicio.publicar(FAMILIA, cambio(id));
+        }
+        esperar(emisor, 5);
+
+        assertThat(emisor.recibidos).extracting(TreeChangeEvent::getId).containsExactly(1L, 2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    void losClientesTrabadosNoCreanMasHilosQueElPool() throws InterruptedException {
+        servicio = crear(4, 2);
+        for (int i = 0; i < 5; i++) {
+            servicio.suscribir(FAMILIA, 10L);
+        }
+
+        servicio.publicar(FAMILIA, cambio(1));
+        Thread.sleep(200);
+        ThreadPoolExecutor envios = (ThreadPoolExecutor) ReflectionTestUtils.getField(servicio, "envios");
+        assertThat(envios.getLargestPoolSize()).isEqualTo(2);
+        assertThat(envios.getQueue()).hasSize(3);
+
+        // Al destrabarse, los que esperaban en la cola también reciben el evento
+        liberar.countDown();
+        for (EmisorGrabador emisor : emisores) {
+            esperar(emisor, 1);
+            assertThat(emisor.recibidos).extracting(TreeChangeEvent::getId).containsExactly(1L);
+        }
+    }
+
+    @Test
+    void siLaFamiliaSeParteCadaSuscriptorSigueALaParteDeSuRaiz() throws InterruptedException {
+        servicio = crear(8, 2);
+        servicio.suscribir(FAMILIA, 10L);
+        servicio.suscribir(FAMILIA, 20L);
+        liberar.countDown();
+
+        servicio.separarFamilia(FAMILIA, 2L, Set.of(20L));
+        servicio.publicar(2L, cambio(1));
+        servicio.publicar(FAMILIA, cambio(2));
+        esperar(emisores.get(0), 1);
+        esperar(emisores.get(1), 1);
+
+        assertThat(emisores.get(0).recibidos).extracting(TreeChangeEvent::getId).containsExactly(2L);
+        assertThat(emisores.get(1).recibidos).extracting(TreeChangeEvent::getId).containsExactly(1L);
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.dto.LayoutNodeDTO;
+import com.example.obligatorio_arbol9.dto.TreeLayoutDTO;
+import com.example.obligatorio_arbol9.entity.GraphChange;
+import com.example.obligatorio_arbol9.entity.GraphChangeType;
+import com.example.obligatorio_arbol9.entity.User;
+import com.example.obligatorio_arbol9.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Diagramación sobre un grafo en memoria armado a mano, sin base de datos
+class TreeLayoutServiceTest {
+
+    private FamilyGraph graph;
+    private FamilyGraphService familyGraphService;
+    private TreeLayoutService servicio;
+
+    @BeforeEach
+    void crearServicio() {
+        graph = new FamilyGraph();
+        familyGraphService = mock(FamilyGraphService.class);
+        when(familyGraphService.getGraph()).thenReturn(graph);
+        when(familyGraphService.getVersion()).thenReturn(1L);
+
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findAllById(anyIterable())).thenAnswer(invocacion -> {
+            List<User> usuarios = new ArrayList<>();
+            for (Object id : (Iterable<?>) invocacion.getArgument(0)) {
+                usuarios.add(User.builder().id((Long) id).nombre("Persona " + id).build());
+            }
+            return usuarios;
+        });
+
+        servicio = new TreeLayoutService();
+        ReflectionTestUtils.setField(servicio, "familyGraphService", familyGraphService);
+        ReflectionTestUtils.setField(servicio, "userRepository", userRepository);
+        ReflectionTestUtils.setField(servicio, "tamanioCache", 10);
+        servicio.init();
+    }
+
+    private void aplicar(GraphChangeType tipo, long desdeId, Long hastaId) {
+        graph.aplicar(GraphChange.builder().tipo(tipo).desdeId(desdeId).hastaId(hastaId).build());
+    }
+
+    private void personas(long... ids) {
+        for (long id : ids) {
+            aplicar(GraphChangeType.NODO_AGREGADO, id, null);
+        }
+    }
+
+    private void padre(long hijo, long padre) {
+        aplicar(GraphChangeType.PADRE_AGREGADO, hijo, padre);
+    }
+
+    private void conyuges(long a, long b) {
+        aplicar(GraphChangeType.CONYUGE_AGREGADO, a, b);
+    }
+
+    // Raíz 1 casada con 2, con abuelos de los dos lados; hijos desparejos en cantidad de descendientes,
+    // uno de ellos con cónyuge, y un nieto que desciende de dos hijos distintos de la raíz
+    private void familiaDespareja() {
+        personas(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22);
+        conyuges(1, 2);
+        padre(1, 3);
+        padre(1, 4);
+        padre(2, 5);
+        padre(3, 6);
+        padre(3, 7);
+        padre(4, 8);
+        for (long hijo = 9; hijo <= 12; hijo++) {
+            padre(hijo, 1);
+            padre(hijo, 2);
+        }
+        conyuges(10, 13);
+        for (long nieto = 14; nieto <= 18; nieto++) {
+            padre(nieto, 9);
+        }
+        padre(19, 10);
+        padre(19, 13);
+        padre(20, 12);
+        padre(20, 11);
+        padre(21, 18);
+        padre(22, 18);
+    }
+
+    private static void sinSuperposiciones(TreeLayoutDTO layout) {
+        Map<Double, List<LayoutNodeDTO>> porFila = layout.getNodos().stream()
+                .collect(Collectors.groupingBy(LayoutNodeDTO::getY));
+        for (List<LayoutNodeDTO> fila : porFila.values()) {
+            List<LayoutNodeDTO> ordenada = new ArrayList<>(fila);
+            ordenada.sort(Comparator.comparingDouble(LayoutNodeDTO::getX));
+            for (int i = 1; i < ordenada.size(); i++) {
+                assertThat(ordenada.get(i).getX() - ordenada.get(i - 1).getX())
+                        .as("%s y %s", ordenada.get(i - 1).getId(), ordenada.get(i).getId())
+                        .isGreaterThanOrEqualTo(TreeLayoutService.ANCHO_NODO);
+            }
+        }
+        // Filas distintas no se pisan en vertical
+        List<Double> ys = porFila.keySet().stream().sorted().toList();
+        for (int i = 1; i < ys.size(); i++) {
+            assertThat(ys.get(i) - ys.get(i - 1)).isGreaterThanOrEqualTo(TreeLayoutService.ALTO_NODO);
+        }
+    }
+
+    @Test
+    void ningunNodoSeSuperponeYCadaPersonaApareceUnaVez() {
+        familiaDespareja();
+
+        TreeLayoutDTO layout = servicio.getLayout(1L, 5, null, null, null, null);
+
+        List<Long> ids = layout.getNodos().stream().map(LayoutNodeDTO::getId).toList();
+        assertThat(ids).doesNotHaveDuplicates();
+        assertThat(ids).containsExactlyInAnyOrderElementsOf(graph.nodos().keySet());
+        assertThat(layout.getTotalNodos()).isEqualTo(22);
+        sinSuperposiciones(layout);
+    }
+
+    @Test
+    void ningunNodoSeSuperponeEnUnArbolAnchoYProfundo() {
+        // Cada persona tiene entre 0 y 3 hijos según su id, hasta cuatro generaciones bajo la raíz
+        personas(1);
+        List<Long> nivel = List.of(1L);
+        long siguienteId = 2;
+        for (int generacion = 0; generacion < 4; generacion++) {
+            List<Long> hijos = new ArrayList<>();
+            for (long id : nivel) {
+                for (int h = 0; h < id % 4; h++) {
+                    long hijo = siguienteId++;
+                    personas(hijo);
+                    padre(hijo, id);
+                    hijos.add(hijo);
+                }
+            }
+            nivel = hijos;
+        }
+
+        TreeLayoutDTO layout = servicio.getLayout(1L, 10, null, null, null, null);
+
+        assertThat(layout.getNodos()).hasSize(graph.cantidadNodos());
+        sinSuperposiciones(layout);
+    }
+
+    @Test
+    void unCambioAjenoConservaElDiagramaYUnoPropioLoRecalcula() {
+        familiaDespareja();
+        TreeLayoutDTO antes = servicio.getLayout(1L, 5, null, null, null, null);
+
+        // Un cambio que no toca a nadie del diagrama: se devuelve el mismo, con la versión adelantada
+        personas(30);
+        when(familyGraphService.getVersion()).thenReturn(2L);
+        when(familyGraphService.tocadosDesde(anyLong())).thenReturn(Set.of(30L));
+        TreeLayoutDTO ajeno = servicio.getLayout(1L, 5, null, null, null, null);
+        assertThat(ajeno.getVersion()).isEqualTo(2L);
+        assertThat(ajeno.getNodos()).isEqualTo(antes.getNodos());
+
+        // 30 pasa a ser hijo de 12: el diagrama se recalcula y lo incluye sin superponer
+        padre(30, 12);
+        when(familyGraphService.getVersion()).thenReturn(3L);
+        when(familyGraphService.tocadosDesde(anyLong())).thenReturn(Set.of(30L, 12L));
+        TreeLayoutDTO propio = servicio.getLayout(1L, 5, null, null, null, null);
+        assertThat(propio.getVersion()).isEqualTo(3L);
+        assertThat(propio.getNodos()).extracting(LayoutNodeDTO::getId).contains(30L);
+        sinSuperposiciones(propio);
+    }
+
+    @Test
+    void laVentanaDevuelveSoloLosNodosQueLaTocan() {
+        familiaDespareja();
+        TreeLayoutDTO completo = servicio.getLayout(1L, 5, null, null, null, null);
+
+        // Sólo la fila de la raíz
+        TreeLayoutDTO fila = servicio.getLayout(1L, 5, null, 0.0, null, TreeLayoutService.ALTO_NODO);
+
+        assertThat(fila.getTotalNodos()).isEqualTo(completo.getTotalNodos());
+        assertThat(fila.getNodos()).isNotEmpty().allMatch(n -> n.getY() == 0);
+        assertThat(fila.getNodos()).extracting(LayoutNodeDTO::getId).contains(1L, 2L);
+    }
+}
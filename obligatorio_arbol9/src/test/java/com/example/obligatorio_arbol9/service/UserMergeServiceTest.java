@@ -0,0 +1,137 @@
+package com.example.obligatorio_arbol9.service;
+
+import com.example.obligatorio_arbol9.entity.*;
+import com.example.obligatorio_arbol9.repository.DuplicateCandidateRepository;
+import com.example.obligatorio_arbol9.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+// Fusión de duplicados: las sentencias de reasignación corren contra H2; el resto de los servicios se simulan
+class UserMergeServiceTest {
+
+    private static final long SURVIVOR = 1;
+    private static final long LOSER = 2;
+
+    private JdbcTemplate jdbcTemplate;
+    private FamilyGraphService familyGraphService;
+    private DuplicateCandidate candidato;
+    private UserMergeService servicio;
+
+    @BeforeEach
+    void crearBase() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:fusion;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT PRIMARY KEY)");
+        jdbcTemplate.execute("CREATE TABLE relationship (from_id BIGINT, type VARCHAR(20), to_id BIGINT, "
+                + "metadata VARCHAR(1000), PRIMARY KEY (from_id, type, to_id))");
+
+        FamilyGraph graph = new FamilyGraph();
+        for (long id : new long[]{1, 2, 10, 11, 20, 21, 30, 31, 40}) {
+            jdbcTemplate.update("INSERT INTO users (id) VALUES (?)", id);
+            graph.aplicar(GraphChange.builder().tipo(GraphChangeType.NODO_AGREGADO).desdeId(id).build());
+        }
+        // Padres: el eliminado tiene a 10 (compartido con el que se conserva) y a 11
+        relacion(graph, SURVIVOR, RelationshipType.PADRE, 10);
+        relacion(graph, LOSER, RelationshipType.PADRE, 10);
+        relacion(graph, LOSER, RelationshipType.PADRE, 11);
+        // Hijos: 20 sólo del eliminado, 21 de los dos
+        relacion(graph, 20, RelationshipType.PADRE, LOSER);
+        relacion(graph, 21, RelationshipType.PADRE, LOSER);
+        relacion(graph, 21, RelationshipType.PADRE, SURVIVOR);
+        // Cónyuges: 30 ya está casado con el que se conserva (guardado en el otro sentido), 31 sólo con el
+        // eliminado, y una pareja entre los dos que desaparece
+        relacion(graph, 30, RelationshipType.CONYUGE, LOSER);
+        relacion(graph, SURVIVOR, RelationshipType.CONYUGE, 30);
+        relacion(graph, LOSER, RelationshipType.CONYUGE, 31);
+        relacion(graph, SURVIVOR, RelationshipType.CONYUGE, LOSER);
+        // Confirmaciones: el eliminado se confirmó a sí mismo y confirmó a 40
+        relacion(graph, LOSER, RelationshipType.CONFIRMACION, LOSER);
+        relacion(graph, 40, RelationshipType.CONFIRMACION, LOSER);
+
+        familyGraphService = mock(FamilyGraphService.class);
+        when(familyGraphService.getGraph()).thenReturn(graph);
+
+        candidato = DuplicateCandidate.builder().id(7L).userAId(SURVIVOR).userBId(LOSER).score(0.95).build();
+        DuplicateCandidateRepository duplicateCandidateRepository = mock(DuplicateCandidateRepository.class);
+        when(duplicateCandidateRepository.findById(7L)).thenReturn(Optional.of(candidato));
+
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findById(SURVIVOR)).thenReturn(Optional.of(User.builder().id(SURVIVOR).familiaId(100L).build()));
+        when(userRepository.findById(LOSER)).thenReturn(Optional.of(User.builder().id(LOSER).familiaId(100L).build()));
+
+        servicio = new UserMergeService();
+        ReflectionTestUtils.setField(servicio, "duplicateCandidateRepository", duplicateCandidateRepository);
+        ReflectionTestUtils.setField(servicio, "userRepository", userRepository);
+        ReflectionTestUtils.setField(servicio, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(servicio, "familyStatsService", mock(FamilyStatsService.class));
+        ReflectionTestUtils.setField(servicio, "familyGraphService", familyGraphService);
+        ReflectionTestUtils.setField(servicio, "outboxService", mock(OutboxService.class));
+        ReflectionTestUtils.setField(servicio, "treeEventService", mock(TreeEventService.class));
+        ReflectionTestUtils.setField(servicio, "graphIntegrityService", mock(GraphIntegrityService.class));
+    }
+
+    @AfterEach
+    void borrarBase() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    private void relacion(FamilyGraph graph, long desde, RelationshipType tipo, long hasta) {
+        jdbcTemplate.update("INSERT INTO relationship (from_id, type, to_id) VALUES (?, ?, ?)", desde, tipo.name(), hasta);
+        GraphChangeType cambio = switch (tipo) {
+            case PADRE -> GraphChangeType.PADRE_AGREGADO;
+            case CONYUGE -> GraphChangeType.CONYUGE_AGREGADO;
+            case CONFIRMACION -> GraphChangeType.CONFIRMACION_AGREGADA;
+        };
+        graph.aplicar(GraphChange.builder().tipo(cambio).desdeId(desde).hastaId(hasta).build());
+    }
+
+    private List<String> relaciones() {
+        return jdbcTemplate.queryForList(
+                "SELECT CONCAT(from_id, ' ', type, ' ', to_id) FROM relationship ORDER BY type, from_id, to_id",
+                String.class);
+    }
+
+    @Test
+    void lasRelacionesDelEliminadoPasanAlQueSeConserva() {
+        servicio.merge(7L, SURVIVOR);
+
+        assertThat(relaciones()).containsExactly(
+                "1 CONFIRMACION 1",
+                "40 CONFIRMACION 1",
+                "1 CONYUGE 30",
+                "1 CONYUGE 31",
+                "1 PADRE 10",
+                "1 PADRE 11",
+                "20 PADRE 1",
+                "21 PADRE 1");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users WHERE id = 2", Integer.class)).isZero();
+        assertThat(candidato.getEstado()).isEqualTo(DuplicateStatus.FUSIONADO);
+    }
+
+    @Test
+    void elGrafoEnMemoriaRecibeLasMismasAristas() {
+        servicio.merge(7L, SURVIVOR);
+
+        verify(familyGraphService).registrar(GraphChangeType.PADRE_AGREGADO, SURVIVOR, 10L);
+        verify(familyGraphService).registrar(GraphChangeType.PADRE_AGREGADO, SURVIVOR, 11L);
+        verify(familyGraphService).registrar(GraphChangeType.PADRE_AGREGADO, 20L, SURVIVOR);
+        verify(familyGraphService).registrar(GraphChangeType.PADRE_AGREGADO, 21L, SURVIVOR);
+        verify(familyGraphService).registrar(GraphChangeType.CONYUGE_AGREGADO, SURVIVOR, 30L);
+        verify(familyGraphService).registrar(GraphChangeType.CONYUGE_AGREGADO, SURVIVOR, 31L);
+        verify(familyGraphService, never()).registrar(GraphChangeType.CONYUGE_AGREGADO, SURVIVOR, SURVIVOR);
+        verify(familyGraphService).registrar(GraphChangeType.CONFIRMACION_AGREGADA, SURVIVOR, SURVIVOR);
+        verify(familyGraphService).registrar(GraphChangeType.CONFIRMACION_AGREGADA, 40L, SURVIVOR);
+        verify(familyGraphService).registrar(GraphChangeType.NODO_ELIMINADO, LOSER, null);
+    }
+}